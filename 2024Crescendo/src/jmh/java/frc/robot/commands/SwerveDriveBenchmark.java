@@ -0,0 +1,56 @@
+package frc.robot.commands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants;
+import frc.robot.modules.SwerveSetpointGenerator;
+
+/**
+ * {@link SwerveDrive#execute()} from joystick values to module setpoints, with the hardware writes left out.
+ * The original ChassisSpeeds/array pipeline is kept alongside for comparison.
+ */
+@State(Scope.Thread)
+public class SwerveDriveBenchmark {
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+        Constants.Swerve.SWERVE_MAX_SPEED, Constants.Swerve.STEER_MAX_VELOCITY * 2 * Math.PI, Constants.Swerve.DRIVE_MAX_ACCELERATION,
+        Constants.Swerve.m_frontLeftLocation, Constants.Swerve.m_frontRightLocation,
+        Constants.Swerve.m_backLeftLocation, Constants.Swerve.m_backRightLocation);
+
+    private double step = 0;
+
+    @Benchmark
+    public void executePipeline(Blackhole blackhole) {
+        step += 0.01;
+        double heading = step % (2 * Math.PI);
+
+        double xSpeed = SwerveDrive.cleanAndScaleInput(0.00, Math.sin(step), null, Constants.Swerve.SWERVE_MAX_SPEED);
+        double ySpeed = SwerveDrive.cleanAndScaleInput(0.00, Math.cos(step), null, Constants.Swerve.SWERVE_MAX_SPEED);
+        double rotationSpeed = SwerveDrive.cleanAndScaleInput(0.00, 0.5, null, Constants.Swerve.SWERVE_ROTATION_MAX_SPEED_IN_RAD);
+
+        setpointGenerator.calculate(xSpeed, ySpeed, rotationSpeed, heading, true, 0.02);
+        blackhole.consume(setpointGenerator.speeds);
+        blackhole.consume(setpointGenerator.angles);
+    }
+
+    @Benchmark
+    public SwerveModuleState[] chassisSpeedsPipeline() {
+        step += 0.01;
+        double heading = step % (2 * Math.PI);
+
+        double xSpeed = SwerveDrive.cleanAndScaleInput(0.00, Math.sin(step), null, Constants.Swerve.SWERVE_MAX_SPEED);
+        double ySpeed = SwerveDrive.cleanAndScaleInput(0.00, Math.cos(step), null, Constants.Swerve.SWERVE_MAX_SPEED);
+        double rotationSpeed = SwerveDrive.cleanAndScaleInput(0.00, 0.5, null, Constants.Swerve.SWERVE_ROTATION_MAX_SPEED_IN_RAD);
+
+        ChassisSpeeds chassisSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(xSpeed, ySpeed, rotationSpeed, new Rotation2d(heading));
+        SwerveModuleState[] moduleState = Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(chassisSpeeds);
+        SwerveDriveKinematics.desaturateWheelSpeeds(moduleState, Constants.Swerve.SWERVE_MAX_SPEED);
+        return moduleState;
+    }
+}
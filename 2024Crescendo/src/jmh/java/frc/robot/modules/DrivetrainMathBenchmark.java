@@ -0,0 +1,75 @@
+package frc.robot.modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants;
+
+/** Module optimization and inverse kinematics, WPILib versions next to the allocation-free ones the robot uses */
+@State(Scope.Thread)
+public class DrivetrainMathBenchmark {
+    private final ModuleKinematics kinematics = new ModuleKinematics(
+        Constants.Swerve.m_frontLeftLocation, Constants.Swerve.m_frontRightLocation,
+        Constants.Swerve.m_backLeftLocation, Constants.Swerve.m_backRightLocation);
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+        Constants.Swerve.SWERVE_MAX_SPEED, Constants.Swerve.STEER_MAX_VELOCITY * 2 * Math.PI, Constants.Swerve.DRIVE_MAX_ACCELERATION,
+        Constants.Swerve.m_frontLeftLocation, Constants.Swerve.m_frontRightLocation,
+        Constants.Swerve.m_backLeftLocation, Constants.Swerve.m_backRightLocation);
+    private final ModuleOptimizer optimizer = new ModuleOptimizer();
+
+    // stepped every call so the JIT cannot fold the inputs into constants
+    private double step = 0;
+
+    private double nextAngle() {
+        step += 0.37;
+        return step % (2 * Math.PI) - Math.PI;
+    }
+
+    @Benchmark
+    public SwerveModuleState wpilibOptimize() {
+        double desired = nextAngle();
+        return SwerveModuleState.optimize(new SwerveModuleState(1.5, new Rotation2d(desired)), new Rotation2d(-desired));
+    }
+
+    @Benchmark
+    public void moduleOptimize(Blackhole blackhole) {
+        // the math SwerveModule.setState runs, up to the motor writes
+        double desired = nextAngle();
+        optimizer.optimize(1.5, desired, -desired);
+        if (optimizer.steerChanged()) optimizer.steerSent();
+        if (optimizer.driveChanged()) optimizer.driveSent();
+        blackhole.consume(optimizer.getRotations());
+        blackhole.consume(optimizer.getDriveVelocity());
+    }
+
+    @Benchmark
+    public SwerveModuleState[] wpilibKinematics() {
+        double angle = nextAngle();
+        SwerveModuleState[] states = Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(
+            ChassisSpeeds.fromFieldRelativeSpeeds(3 * Math.cos(angle), 3 * Math.sin(angle), 2.0, new Rotation2d(angle)));
+        SwerveDriveKinematics.desaturateWheelSpeeds(states, Constants.Swerve.SWERVE_MAX_SPEED);
+        return states;
+    }
+
+    @Benchmark
+    public void moduleKinematics(Blackhole blackhole) {
+        double angle = nextAngle();
+        kinematics.calculate(3 * Math.cos(angle), 3 * Math.sin(angle), 2.0, angle, true, Constants.Swerve.SWERVE_MAX_SPEED);
+        blackhole.consume(kinematics.speeds);
+        blackhole.consume(kinematics.angles);
+    }
+
+    @Benchmark
+    public void setpointGenerator(Blackhole blackhole) {
+        double angle = nextAngle();
+        setpointGenerator.calculate(3 * Math.cos(angle), 3 * Math.sin(angle), 2.0, angle, true, 0.02);
+        blackhole.consume(setpointGenerator.speeds);
+        blackhole.consume(setpointGenerator.angles);
+    }
+}
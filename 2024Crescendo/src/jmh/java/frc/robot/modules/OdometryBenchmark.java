@@ -0,0 +1,34 @@
+package frc.robot.modules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.Constants;
+
+/** One pose estimator update, as applied for every odometry thread sample */
+@State(Scope.Thread)
+public class OdometryBenchmark {
+    private final SwerveModulePosition[] positions = new SwerveModulePosition[] {
+        new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition()
+    };
+    private final SwerveDrivePoseEstimator poseEstimator =
+        new SwerveDrivePoseEstimator(Constants.Swerve.SWERVE_DRIVE_KINEMATICS, new Rotation2d(), positions, new Pose2d());
+
+    private double time = 0;
+
+    @Benchmark
+    public Pose2d poseEstimatorUpdate() {
+        // a 250 hz sample of the robot driving a slow arc
+        time += 1.0 / Constants.Swerve.ODOMETRY_FREQUENCY;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i].distanceMeters += 0.01;
+            positions[i].angle = new Rotation2d(time * 0.1);
+        }
+        return poseEstimator.updateWithTime(time, new Rotation2d(time * 0.05), positions);
+    }
+}
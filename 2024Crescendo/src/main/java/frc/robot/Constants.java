@@ -4,6 +4,8 @@
 
 package frc.robot;
 
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
@@ -34,6 +36,14 @@ public final class Constants {
     public static final double SPIKE_CURRENT = 25, AUTOMATIC_LOWER_SPEED = 0.8, HANG_CURRENT = 15;
     public static final double CURRENT_LIMIT = 40;
 
+    /* latch detection, checked every LATCH_PERIOD seconds while lowering */
+    public static final double SIGNAL_FREQUENCY = 250, LATCH_PERIOD = 0.004; //Hz, seconds
+    public static final double SPIKE_FILTER_TIME = 0.02, SPIKE_BLANKING = 0.15; //seconds, ignores the startup inrush
+    // SPIKE_CURRENT is supply amps, the latch check reads stator amps. Supply is about stator times the duty cycle,
+    // so the same spike at the lowering duty cycle is SPIKE_CURRENT / 0.32 = 78 A stator
+    public static final double SPIKE_STATOR_CURRENT = SPIKE_CURRENT / (AUTOMATIC_LOWER_SPEED * WIND_FACTOR); //amps
+    public static final double STALL_VELOCITY = 5; //rotor rotations per second
+
     //digital input
     public static final int LEFT_DIGITAL_INPUT_ID = 1, RIGHT_DIGITAL_INPUT_ID = 0; //TODO: change IDs
         
@@ -41,6 +51,10 @@ public final class Constants {
     public static final double UP_kP = 1.0, UP_kI = 0, UP_kD = 0, UP_kS = 0.00, UP_kD_TIME = 0.02;
     public static final double DOWN_kP = 0.85, DOWN_kI = 0, DOWN_kD = 0, DOWN_kD_TIME = 0.02, DOWN_kS = 0.0;
     public static final double CRUISE_VELOCITY = 100.0, ACCELERATION = 40.0;
+
+    /* simulation */
+    public static final double SIM_GEARING = 12, SIM_DRUM_RADIUS = 0.02, SIM_CARRIAGE_MASS = 2.0; //drum in meters, carriage in kg
+    public static final double SIM_MIN_HEIGHT = -0.5, SIM_MAX_HEIGHT = 1.5; //meters
   }
   
   public static class Feeder{
@@ -69,6 +83,8 @@ public final class Constants {
     public static final double STEER_kI = 0;
     public static final double STEER_kD = 0;
 
+    public static final double DRIVE_STATOR_LIMIT = 60, STEER_STATOR_LIMIT = 15; //amps, supply limits come from PowerManager
+
     //0.319024 = circumference in meters
     //12.8:1 = rotor to sensor ratio
     public static final double STEER_GEAR_RATIO = 150/7;
@@ -82,12 +98,43 @@ public final class Constants {
 
     public static final double SWERVE_MAX_SPEED = 3;//0.3; //4.1695 mps //3 for driver
 
+    /* setpoint generator */
+    public static final double STEER_MAX_VELOCITY = 3; //rps at the module, the steer MotionMagic cruise velocity
+    public static final double STEER_MAX_ACCELERATION = 10; //rps/s at the module, the steer MotionMagic acceleration
+    /* kg, the 125 lb frame limit plus a 13 lb battery and 12 lb of bumpers. Heavier only makes the limit safer */
+    public static final double ROBOT_MASS = Units.lbsToKilograms(125 + 13 + 12);
+    /* Blue Nitrile tread on carpet, below the 1.1 to 1.2 usually quoted so worn tread and dusty carpet still grip */
+    public static final double WHEEL_COF = 1.0;
+    public static final double FALCON_KT = 0.0182; //Nm per stator amp
+    /* m/s^2, whichever runs out first: wheel grip or DRIVE_STATOR_LIMIT through the gearbox */
+    public static final double DRIVE_MAX_ACCELERATION = Math.min(WHEEL_COF * 9.81,
+      DRIVE_STATOR_LIMIT * FALCON_KT * DRIVE_GEAR_RATIO / (WHEEL_CIRCUMFERENCE / (2 * Math.PI)) * 4 / ROBOT_MASS);
+
+    /* odometry thread */
+    public static final String CANBUS = "Canivore";
+    public static final double ODOMETRY_FREQUENCY = 250; //hz, CANivore signals
+    public static final int ODOMETRY_QUEUE_SIZE = 20; //samples kept between main loops
+
+    /* traction control, a module slips when its velocity disagrees with the gyro and the other modules */
+    public static final double SLIP_VELOCITY_ERROR = 0.35; //m/s
+    public static final double SLIP_RATIO = 0.15; //of the robot speed, on top of SLIP_VELOCITY_ERROR
+    public static final double SLIP_ACCELERATION_SCALE = 0.3; //of DRIVE_MAX_ACCELERATION while slipping
+    public static final double SLIP_RECOVERY_TIME = 0.5; //s to ramp back to full acceleration
+    public static final double DRIVE_FREE_SPEED = 6380.0 / 60 * MK4I_L1_REV_TO_METERS; //m/s, Falcon free speed at the wheel
+
+    /* setpoint changes smaller than this are not resent */
+    public static final double STEER_SETPOINT_TOLERANCE = 1e-4; //rotations
+    public static final double DRIVE_SETPOINT_TOLERANCE = 1e-3; //rps
+
     public static final double WIDTH = Units.inchesToMeters(23), LENGTH = Units.inchesToMeters(23);
     public static final double ROTATION_CIRCLE_CIRCUMFERENCE = (WIDTH / Math.sqrt(2)) * 2 * Math.PI;
 
     public static final double SWERVE_ROTATION_MAX_SPEED_IN_RAD = (2 / WHEEL_CIRCUMFERENCE) * 2 * Math.PI; 
     public static final double SWERVE_DEADBAND = 0.05;
 
+    /* simulation */
+    public static final double SIM_DRIVE_MOI = 0.025, SIM_STEER_MOI = 0.004; //kg m^2, at the wheel/module
+
     public static Translation2d m_frontLeftLocation = new Translation2d(LENGTH / 2, WIDTH / 2);
     public static Translation2d m_frontRightLocation = new Translation2d(LENGTH / 2, -WIDTH / 2);
     public static Translation2d m_backLeftLocation = new Translation2d(-LENGTH / 2, WIDTH / 2);
@@ -106,8 +153,141 @@ public final class Constants {
     public static final TrapezoidProfile.Constraints SWERVE_TRANSLATION_PID_CONSTRAINTS = new TrapezoidProfile.Constraints(15, 3);
   }
 
+  public static class Profiler {
+    public static final int SAMPLE_COUNT = 256; //samples per section
+    public static final int PUBLISH_PERIOD_LOOPS = 50; //publish histograms once a second
+    public static final double LOOP_BUDGET = 0.02, OVERRUN_TOLERANCE = 1.05;
+  }
+
+  public static class CommandProfiler {
+    public static final double STALL_TIME = 3.0; //seconds before a running command is flagged
+  }
+
+  public static class SysId {
+    public static final double LOG_PERIOD = 0.004; //seconds, 250 hz
+    public static final int SPARK_PERIOD = 4; //ms, Spark MAX status frames while sampling, LOG_PERIOD
+    public static final double REST_TIME = 2.0; //seconds to coast down between tests
+    public static final double MIN_VELOCITY = 0.01; //units per second, slower samples are left out of the fit
+    public static final int ACCELERATION_SAMPLES = 5; //velocity differences averaged without an acceleration signal
+
+    /* quasistatic ramp in V/s, dynamic step in V, timeout in seconds */
+    /* with POWER_kV the drive quasistatic covers 1.7 m and the dynamic 3.3 m, each reverse test drives back over the
+     * forward one, so 3.5 m of straight carpet is enough */
+    public static final double DRIVE_RAMP = 1.5, DRIVE_STEP = 4.0, DRIVE_TIMEOUT = 2.5;
+    public static final double STEER_RAMP = 0.5, STEER_STEP = 3.0, STEER_TIMEOUT = 8.0;
+    public static final double SHOOTER_RAMP = 1.0, SHOOTER_STEP = 8.0, SHOOTER_TIMEOUT = 10.0;
+    public static final double PIVOT_RAMP = 0.25, PIVOT_STEP = 2.0, PIVOT_TIMEOUT = 4.0;
+    public static final double CLIMB_RAMP = 0.5, CLIMB_STEP = 3.0, CLIMB_TIMEOUT = 5.0;
+  }
+
+  public static class ShotTable {
+    public static final String DEPLOY_PATH = "shottable.json"; //relative to the deploy directory
+    public static final String SAVE_PATH = "shottable.json"; //relative to /home/lvuser, which deploys do not touch
+  }
+
+  public static class ShotSolver {
+    public static final double NOTE_SPEED = 12.0; //horizontal m/s after release, measure from video
+    public static final double RELEASE_DELAY = 0.08; //seconds from the solve to the note leaving the shooter
+    public static final int MAX_ITERATIONS = 5;
+    public static final double CONVERGENCE = 0.01; //meters the virtual target moved between iterations
+    public static final double HEADING_kP = 5;
+  }
+
+  public static class Pathfinding {
+    public static final String NAVGRID_PATH = "pathplanner/navgrid.json"; //relative to the deploy directory
+    public static final double ROBOT_RADIUS = 0.45; //meters from obstacle cell centers a cell must be to be drivable
+    public static final double CLEARANCE = 0.9, CLEARANCE_WEIGHT = 2.0; //extra cost per meter closer than CLEARANCE
+
+    /* blue origin field poses to drive to, facing the scoring/loading side */
+    public static final Pose2d BLUE_AMP = new Pose2d(1.84, 7.60, Rotation2d.fromDegrees(-90));
+    public static final Pose2d RED_AMP = new Pose2d(14.70, 7.60, Rotation2d.fromDegrees(-90));
+    public static final Pose2d BLUE_SOURCE = new Pose2d(15.40, 0.90, Rotation2d.fromDegrees(120));
+    public static final Pose2d RED_SOURCE = new Pose2d(1.14, 0.90, Rotation2d.fromDegrees(60));
+  }
+
+  public static class WarmUp {
+    public static final int ITERATIONS = 20000; //past the C2 compile thresholds
+    public static final double LOOP_BUDGET = 0.008; //seconds of each disabled loop spent warming up
+    public static final int QUIET_LOOPS = 50; //loops without JIT activity before finishing
+  }
+
+  public static class Telemetry {
+    public static final int QUEUE_SIZE = 8192; //samples buffered for the writer, must be a power of two
+    public static final int MAX_CHANNEL_WIDTH = 16; //values per sample
+    public static final double WRITER_PERIOD = 0.01; //seconds the writer sleeps when the queue is empty
+    public static final long MAX_FILE_BYTES = 64L * 1024 * 1024;
+    public static final int MAX_FILES = 20; //oldest files are deleted past this
+    public static final String ROBOT_DIRECTORY = "/home/lvuser/telemetry", SIM_DIRECTORY = "telemetry";
+
+    /* NetworkTables */
+    public static final int SLOW_PERIOD_LOOPS = 5; //10 Hz
+    public static final int MESSAGE_OVERHEAD_BYTES = 12; //estimated per value update
+    public static final double BYTES_PER_SECOND_BUDGET = 25000;
+  }
+
+  public static class DeviceConfig {
+    public static final int THREADS = 6, ATTEMPTS = 3;
+    public static final double TIMEOUT = 0.1; //seconds per read back or apply
+    public static final double TOLERANCE = 1e-3; //relative, or absolute below 1, devices store quantized values
+  }
+
+  public static class Can {
+    public static final double MEASURE_TIME = 5; //seconds averaged before and after the signal plans
+    public static final int SAMPLE_PERIOD_LOOPS = 5;
+
+    /* Phoenix signals that no control loop waits on */
+    public static final double STATUS_FREQUENCY = 50, SLOW_FREQUENCY = 10, REMOTE_SENSOR_FREQUENCY = 100; //Hz
+
+    /* Spark MAX status frame periods */
+    public static final int SPARK_FAST_PERIOD = 20, SPARK_SLOW_PERIOD = 200, SPARK_IDLE_PERIOD = 500; //ms
+    public static final int SPARK_DISABLED_PERIOD = 65535; //ms, longest period the Spark MAX accepts
+
+    /* Canandcoder frame periods */
+    public static final double CANANDCODER_POSITION_PERIOD = 0.02, CANANDCODER_IDLE_PERIOD = 1.0; //seconds
+  }
+
+  public static class Power {
+    public static final int PDH_ID = 1;
+    public static final double MIN_VOLTAGE = 8.0; //volts, stays clear of the 6.8V brownout
+    public static final double MAX_TOTAL_CURRENT = 250, UNMANAGED_RESERVE = 30; //amps, reserve covers steer, pivot, roboRIO and radio
+
+    /* battery plus wiring resistance, estimated online from current steps */
+    public static final double NOMINAL_RESISTANCE = 0.02, MIN_RESISTANCE = 0.01, MAX_RESISTANCE = 0.05; //ohms
+    public static final double RESISTANCE_STEP = 20, RESISTANCE_FILTER = 0.1; //amps, weight of each new estimate
+
+    /* budget scale when the voltage still dips below MIN_VOLTAGE */
+    public static final double BACKOFF = 0.8, RECOVERY = 0.02, MIN_SCALE = 0.3; //per loop
+
+    public static final double LIMIT_HYSTERESIS = 2, RAISE_PERIOD = 0.25; //amps, seconds between raising a limit
+
+    /* per motor supply current limits in amps, priorities in DRIVE, SCORE, CLIMB modes, higher is served first */
+    public static final double DRIVE_MIN = 20, DRIVE_MAX = 60;
+    public static final int[] DRIVE_PRIORITY = {4, 2, 1};
+    public static final double SHOOTER_MIN = 10, SHOOTER_MAX = 50;
+    public static final int[] SHOOTER_PRIORITY = {1, 4, 0};
+    public static final double CLIMB_MIN = 10, CLIMB_MAX = 60;
+    public static final int[] CLIMB_PRIORITY = {0, 0, 4};
+    public static final double INTAKE_MIN = 10, INTAKE_MAX = 40;
+    public static final int[] INTAKE_PRIORITY = {3, 1, 0};
+    public static final double FEEDER_MIN = 10, FEEDER_MAX = 30;
+    public static final int[] FEEDER_PRIORITY = {2, 3, 0};
+  }
+
   public static class Vision {
     public static final double DEGREE_ERROR = 5.0;
+    public static final int FRAME_QUEUE_SIZE = 20; //frames kept between loops
+    public static final long FRAME_MATCH_TOLERANCE_MICROS = 5000;
+
+    /* pose estimation */
+    public static final double POSE_HISTORY_SECONDS = 1.5;
+    public static final double XY_STD_DEV_COEFFICIENT = 0.02, THETA_STD_DEV_COEFFICIENT = 0.06; //scaled by distance^2 / tag count
+    public static final double UNTRUSTED_STD_DEV = 9999999;
+    public static final double MAX_SINGLE_TAG_DISTANCE = 4.0, MAX_SINGLE_TAG_JUMP = 1.0; //meters
+
+    /* speaker opening, blue origin */
+    public static final Translation2d BLUE_SPEAKER = new Translation2d(0.0, 5.548);
+    public static final Translation2d RED_SPEAKER = new Translation2d(16.541, 5.548);
+    public static final TrapezoidProfile.Constraints ALIGN_CONSTRAINTS = new TrapezoidProfile.Constraints(4 * Math.PI, 8 * Math.PI); //rad/s, rad/s^2
   }
 
   public static class Auto {
@@ -119,6 +299,9 @@ public final class Constants {
     public static final double kPXController = 25;
     public static final double kPYController = 30;
     public static final double kPThetaController = 7.5;
+    public static final double kPTranslationController = 0.0001;
+    public static final double kMaxModuleSpeedMetersPerSecond = 0.3;
+    public static final double kDriveBaseRadiusMeters = 0.41309; //robot center to the furthest module
 
     public static final TrapezoidProfile.Constraints kThetaControllerConstraints =
       new TrapezoidProfile.Constraints(kMaxAngularSpeedDegreesPerSecond, kMaxAngularSpeedDegreesPerSecondSquared);
@@ -141,16 +324,42 @@ public final class Constants {
 
     public static final double AMP_TOP_VELOCITY = 20, AMP_TOP_ACCELERATION = 8;
     public static final double AMP_BOTTOM_VELOCITY = 20, AMP_BOTTOM_ACCELERATION = 8;
+
+    /* simulation */
+    public static final double SIM_FLYWHEEL_MOI = 0.002; //kg m^2
   }
   
   public static class Pivot {
     public static final int PIVOT_ID = 14, ENCODER_ID = 32;
     public static final double GEAR_RATIO = 50/1;
 
-    public static final double kP = 5, kI = 0, kD = 0, kD_TIME = 0.02;
+    public static final double kP = 5, kI = 0, kD = 0;
+    /* set once the SysId Pivot fit has replaced kS, kG, kV, kA and HORIZONTAL_OFFSET below. Until then the output stays
+     * clamped to the old 0.2 so the sim model gains cannot drive the real arm hard */
+    public static final boolean CHARACTERIZED = false;
+    public static final double MAX_OUTPUT = CHARACTERIZED ? 0.5 : 0.2;
+
+    /* profile and gravity feedforward, run every CONTROL_PERIOD seconds */
+    public static final double CONTROL_PERIOD = 0.005;
+    /* ArmFeedforward in volts, per rad/s and rad/s^2. kG, kV and kA are the NEO model through GEAR_RATIO for the sim arm,
+     * SIM_ARM_MOI as a uniform 4.4 kg arm of SIM_ARM_LENGTH, and kS is NEO breakaway. The SysId Pivot fit replaces them */
+    public static final double kS = 0.1, kG = 0.91, kV = 0.99, kA = 0.028;
+    public static final double MAX_ACCELERATION = 4.0; //pivot rotations per second squared
+    /* fastest the profile may ask for while holding the arm level at full acceleration without saturating MAX_OUTPUT,
+     * 0.11 rot/s at 0.2 and 0.69 rot/s at 0.5 */
+    public static final double MAX_VELOCITY = Units.radiansToRotations(
+      (MAX_OUTPUT * 12 - kS - kG - kA * Units.rotationsToRadians(MAX_ACCELERATION)) / kV); //pivot rotations per second
+    /* pivot rotations the homed encoder reads with the arm horizontal. 0 takes the Canandcoder zero as level, the same
+     * as the sim arm, so INTAKE_DOWN rests 10 degrees above level. SysId/Pivot/Horizontal Offset fits the real one */
+    public static final double HORIZONTAL_OFFSET = 0.0;
+    public static final double POSITION_TOLERANCE = 1.5 / 360.0, VELOCITY_TOLERANCE = 0.02; //pivot rotations, per second
     
     public static final double CONVERSION_FACTOR = 1.0/360.0;
     public static final double INTAKE_SAFE = 114 * Constants.Pivot.CONVERSION_FACTOR;
     public static final double INTAKE_DOWN = 10 * Constants.Pivot.CONVERSION_FACTOR;
+
+    /* simulation */
+    public static final double SIM_ARM_MOI = 0.3, SIM_ARM_LENGTH = 0.45; //kg m^2, meters
+    public static final double SIM_MIN_ANGLE = 0, SIM_MAX_ANGLE = 120; //degrees
   }
 }
@@ -8,6 +8,11 @@ import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.robot.util.CanBusMonitor;
+import frc.robot.util.CommandProfiler;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PowerManager;
+import frc.robot.util.TelemetryPublisher;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -18,6 +23,11 @@ import edu.wpi.first.wpilibj2.command.button.Trigger;
 public class Robot extends TimedRobot {
   private Command m_autonomousCommand;
   private RobotContainer robotContainer;
+  private LoopProfiler profiler;
+  private CommandProfiler commandProfiler;
+  private TelemetryPublisher telemetry;
+  private PowerManager power;
+  private CanBusMonitor canBus;
   
   /**
    * This function is run when the robot is first started up and should be used for any
@@ -28,6 +38,11 @@ public class Robot extends TimedRobot {
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     robotContainer = new RobotContainer();
+    profiler = LoopProfiler.getInstance();
+    commandProfiler = CommandProfiler.getInstance();
+    telemetry = TelemetryPublisher.getInstance();
+    power = PowerManager.getInstance();
+    canBus = CanBusMonitor.getInstance();
     
     // robotContainer.resetSwerveSensors();
 
@@ -51,7 +66,16 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    profiler.startLoop();
     CommandScheduler.getInstance().run();
+    profiler.endLoop();
+    commandProfiler.periodic();
+
+    power.periodic();
+    canBus.periodic();
+
+    // after endLoop so publishing is not charged to the last command that ran
+    telemetry.periodic();
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
@@ -59,13 +83,23 @@ public class Robot extends TimedRobot {
   public void disabledInit() {}
 
   @Override
-  public void disabledPeriodic() {}
+  public void disabledPeriodic() {
+    // cheap once everything is built, so the cached autos are ready whenever auto starts
+    robotContainer.buildAutonomousRoutines();
+    robotContainer.runWarmUp();
+  }
+
+  @Override
+  public void disabledExit() {
+    robotContainer.stopWarmUp();
+  }
 
   /** This autonomous runs the autonomous command selected by your {@link RobotContainer} class. */
   @Override
   public void autonomousInit() {
     // robotContainer.resetSwerveSensors();
     m_autonomousCommand = robotContainer.getAutonomousCommand();
+    power.setMode(PowerManager.Mode.DRIVE);
 
     // robotContainer.swerveToNeutralMode();
 
@@ -95,6 +129,7 @@ public class Robot extends TimedRobot {
     // robotContainer.swerveToNeutralMode();
     // robotContainer.maintainPivotPosition();
     robotContainer.setClimbEncoderOffset();
+    power.setMode(PowerManager.Mode.DRIVE);
   }
 
   /** This function is called periodically during operator control. */
@@ -12,6 +12,9 @@ import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 // import edu.wpi.first.wpilibj.shuffleboard.BuiltInWidgets;
 import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 // import edu.wpi.first.wpilibj.PowerDistribution;
 // import edu.wpi.first.wpilibj.PowerDistribution.ModuleType;
 
@@ -19,8 +22,6 @@ import edu.wpi.first.wpilibj2.command.*; //NOT WORKING
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 // import edu.wpi.first.wpilibj2.command.button.Trigger;
 
-import com.pathplanner.lib.commands.PathPlannerAuto;
-
 import com.reduxrobotics.canand.CanandEventLoop;
 
 import frc.robot.subsystems.Climb;
@@ -31,6 +32,13 @@ import frc.robot.subsystems.Climb;
 // import frc.robot.subsystems.Shooter;
 
 import frc.robot.commands.*;
+import frc.robot.util.Pathfinder;
+import frc.robot.util.PowerManager;
+import frc.robot.util.ShotSolver;
+import frc.robot.util.ShotTable;
+import frc.robot.util.WarmUp;
+
+import java.io.IOException;
 import frc.robot.Constants.*;
 
 public class RobotContainer {
@@ -45,24 +53,86 @@ public class RobotContainer {
   // private final PowerDistribution pdh = new PowerDistribution(1, ModuleType.kRev);
   
   public ShuffleboardTab limelightTab = Shuffleboard.getTab("Limelight"), matchTab = Shuffleboard.getTab("Match");
+  public ShuffleboardTab shotTab = Shuffleboard.getTab("Shot Table");
+  public ShuffleboardTab sysIdTab = Shuffleboard.getTab("SysId");
   
   private final CommandXboxController driverController = new CommandXboxController(Xbox.DRIVER_CONTROLLER_PORT);
   private final CommandXboxController operatorController = new CommandXboxController(Xbox.OPERATOR_CONTROLLER_PORT);
+
+  private final SendableChooser<AutonomousRoutines> autoChooser = new SendableChooser<AutonomousRoutines>();
+  private final WarmUp warmUp = new WarmUp();
+  private Pathfinder pathfinder;
+  private final ShotTable shotTable = new ShotTable();
+  private final ShotSolver shotSolver = new ShotSolver(shotTable);
   
   /** Creates RobotContainer, which contains subsystems, OI devices, and commands. */
   public RobotContainer() { 
     leftClimb.configDashboard(matchTab);
     rightClimb.configDashboard(matchTab);
     
+    shotTable.configDashboard(shotTab);
+    // shotTab.addDouble("Speaker Distance", swerve::getSpeakerDistance);
     // vision.configDashboard(limelightTab);
+    // vision.setFrameConsumer(swerve::addVisionMeasurement);
     
     // resetSwerveSensors();
 
+    try {
+      pathfinder = new Pathfinder();
+    } catch (IOException e) {
+      DataLogManager.log("Could not load navgrid: " + e.getMessage());
+    }
+
     CanandEventLoop.getInstance();
     // maintainPivotPosition();
     // pivot.setBrakeMode();
     
     configureBindings();
+    configureAutoChooser();
+    configureSysId();
+
+    // parse and flip every path while the robot sits disabled
+    AutonomousRoutines.loadAll();
+    // module writes are skipped while warming up, so this only exercises the drive math
+    // warmUp.add(() -> swerve.drive(0.5, 0.25, 0.3, true));
+  }
+
+  /** Warms up the hot paths, call periodically while disabled */
+  public void runWarmUp() {
+    warmUp.periodic();
+  }
+
+  /** Stops the warm-up, call when the robot enables */
+  public void stopWarmUp() {
+    warmUp.stop();
+  }
+
+  /** Puts every dashboard routine in the auto chooser on the match tab */
+  private void configureAutoChooser() {
+    autoChooser.setDefaultOption(AutonomousRoutines.S_SHAPE.shuffleboardName, AutonomousRoutines.S_SHAPE);
+    for (AutonomousRoutines routine : AutonomousRoutines.values()) {
+      if (routine.showInDashboard && routine != AutonomousRoutines.S_SHAPE) {
+        autoChooser.addOption(routine.shuffleboardName, routine);
+      }
+    }
+    matchTab.add("Auto", autoChooser);
+  }
+
+  /** Puts a full SysId characterization of every mechanism on the SysId tab, run them enabled with the robot in the pit */
+  private void configureSysId() {
+    sysIdTab.add("Left Climb", leftClimb.getSysId().characterize());
+    sysIdTab.add("Right Climb", rightClimb.getSysId().characterize());
+    // sysIdTab.add("Swerve Drive", swerve.getDriveSysId().characterize());
+    // sysIdTab.add("Swerve Steer", swerve.getSteerSysId().characterize());
+    // sysIdTab.add("Pivot", pivot.getSysId().characterize());
+    // for (int i = 0; i < 4; i++) {
+    //   sysIdTab.add("Shooter " + i, shooter.getFlywheelSysId(i).characterize());
+    // }
+  }
+
+  /** Composes any autonomous routines whose paths finished loading, call periodically while disabled */
+  public void buildAutonomousRoutines() {
+    // AutonomousRoutines.buildAll(swerve);
   }
 
   public void setClimbEncoderOffset(){
@@ -73,10 +143,7 @@ public class RobotContainer {
   // public void maintainPivotPosition(){
   //   pivot.setRelToAbs();
     
-  //   pivot.setpoint.velocity = 0;
-  //   pivot.setpoint.position = pivot.getAbsPos();
-  //   pivot.goal.velocity = 0;
-  //   pivot.goal.position = pivot.getAbsPos();
+  //   pivot.holdPosition(pivot.getAbsPos());
   // }
   
   // public void resetSwerveSensors() {
@@ -84,7 +151,7 @@ public class RobotContainer {
   //   swerve.frontRight.resetEncoder();
   //   swerve.backLeft.resetEncoder();
   //   swerve.backRight.resetEncoder();
-  //   swerve.odometry.update(swerve.getRotation2d(), new SwerveModulePosition[] {
+  //   swerve.poseEstimator.update(swerve.getRotation2d(), new SwerveModulePosition[] {
   //     swerve.frontLeft.getPosition(), swerve.frontRight.getPosition(), swerve.backLeft.getPosition(), swerve.backRight.getPosition()
   //   });;
   // }
@@ -102,10 +169,14 @@ public class RobotContainer {
     // SWERVE
     // driverController.b().onTrue(new InstantCommand(() -> swerve.resetGyro(), swerve));
     // driverController.x().onTrue(new InstantCommand(() -> swerve.defenseMode(), swerve));
-    // driverController.a().onTrue(new VisionAlign(swerve, vision));
+    // driverController.a().onTrue(new VisionAlign(swerve));
     // //driverController.leftTrigger().whileTrue(new WallSnapDrive(swerve, () -> -driverController.getLeftY(), () -> -driverController.getLeftX(), ()-> 0));
     // driverController.leftTrigger().whileTrue(new RunCommand(() -> swerve.goToAngle(180), swerve));
     // driverController.rightTrigger().whileTrue(new RunCommand(() -> swerve.goToAngle(90), swerve));
+    // driverController.leftBumper().whileTrue(new ShootOnTheMove(swerve, shooter, pivot, shotSolver,
+    //   () -> -driverController.getLeftY(), () -> -driverController.getLeftX()));
+    // driverController.y().whileTrue(DriveToPose.to(swerve, pathfinder, Constants.Pathfinding.BLUE_AMP, Constants.Pathfinding.RED_AMP));
+    // driverController.rightBumper().whileTrue(DriveToPose.to(swerve, pathfinder, Constants.Pathfinding.BLUE_SOURCE, Constants.Pathfinding.RED_SOURCE));
     // swerve.setDefaultCommand(new SwerveDrive(swerve, () -> -driverController.getLeftY(),
     //   () -> -driverController.getLeftX(), () -> -driverController.getRightX()));
     
@@ -121,12 +192,19 @@ public class RobotContainer {
     // // SHOOTER
     // operatorController.y().whileTrue(new RunShooter(shooter, (Constants.Shooter.AMP_TOP_VELOCITY), (Constants.Shooter.AMP_TOP_ACCELERATION), (Constants.Shooter.AMP_BOTTOM_VELOCITY), Constants.Shooter.AMP_BOTTOM_ACCELERATION));
     // operatorController.a().whileTrue(new RunShooter(shooter, (Constants.Shooter.SPEAKER_TOP_VELOCITY), (Constants.Shooter.SPEAKER_TOP_ACCELERATION), (Constants.Shooter.SPEAKER_BOTTOM_VELOCITY), Constants.Shooter.SPEAKER_BOTTOM_ACCELERATION));
+    // operatorController.b().whileTrue(new AimFromTable(shooter, pivot, shotTable, swerve::getSpeakerDistance));
+    // operatorController.a().or(operatorController.b())
+    //   .onTrue(new InstantCommand(() -> PowerManager.getInstance().setMode(PowerManager.Mode.SCORE)))
+    //   .onFalse(new InstantCommand(() -> PowerManager.getInstance().setMode(PowerManager.Mode.DRIVE)));
     
     // FEEDER
     //feeder.setDefaultCommand(new RunFeeder(feeder, 0, 0));
     //operatorController.x().whileTrue(new RunFeeder(feeder, -0.8, -0.8));
     
     // CLIMB
+    // climbing takes the current budget from the drivetrain for the rest of the match
+    operatorController.povUp().or(operatorController.povDown())
+      .onTrue(new InstantCommand(() -> PowerManager.getInstance().setMode(PowerManager.Mode.CLIMB)));
     operatorController.povUp().onTrue(new ParallelCommandGroup(
       new InstantCommand(() -> leftClimb.moveTo(Constants.Climb.TOP_ROTATIONS, false), leftClimb),
       new InstantCommand(() -> rightClimb.moveTo(Constants.Climb.TOP_ROTATIONS, false), rightClimb)));
@@ -150,6 +228,9 @@ public class RobotContainer {
    * @return the command to run in autonomous
    */
   public Command getAutonomousCommand() {
-    return new PathPlannerAuto("sShapeAuto");
+    AutonomousRoutines routine = autoChooser.getSelected();
+    Command command = routine.getCommand(DriverStation.getAlliance().orElse(DriverStation.Alliance.Blue));
+    if (command == null) DataLogManager.log("Autonomous routine " + routine.shuffleboardName + " was not built in time");
+    return command;
   }
 }
@@ -0,0 +1,53 @@
+package frc.robot.commands;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants;
+import frc.robot.subsystems.Pivot;
+import frc.robot.subsystems.Shooter;
+import frc.robot.util.ShotTable;
+
+public class AimFromTable extends Command {
+  private final Shooter shooter;
+  private final Pivot pivot;
+  private final ShotTable table;
+  private final DoubleSupplier distance;
+  private final ShotTable.Shot shot = new ShotTable.Shot();
+
+  /**
+   * Creates a new AimFromTable, which spins up the shooter and moves the pivot for the current distance every loop
+   * @param shooter - Shooter object
+   * @param pivot - Pivot object
+   * @param table - shot table to look up
+   * @param distance - meters from the speaker, e.g. {@link frc.robot.subsystems.Swerve#getSpeakerDistance()}
+   */
+  public AimFromTable(Shooter shooter, Pivot pivot, ShotTable table, DoubleSupplier distance) {
+    this.shooter = shooter;
+    this.pivot = pivot;
+    this.table = table;
+    this.distance = distance;
+    addRequirements(shooter, pivot);
+  }
+
+  @Override
+  public void initialize() {}
+
+  @Override
+  public void execute() {
+    if (!table.lookup(distance.getAsDouble(), shot)) return;
+    shooter.runShooter(shot.topVelocity, Constants.Shooter.SPEAKER_TOP_ACCELERATION,
+      shot.bottomVelocity, Constants.Shooter.SPEAKER_BOTTOM_ACCELERATION);
+    pivot.moveTo(shot.pivotRotations);
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    shooter.stopMotors();
+  }
+
+  @Override
+  public boolean isFinished() {
+    return false;
+  }
+}
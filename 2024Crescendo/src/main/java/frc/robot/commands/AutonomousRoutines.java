@@ -1,44 +1,52 @@
 package frc.robot.commands;
 
-import com.pathplanner.lib.commands.PathPlannerAuto;
-import com.pathplanner.lib.path.PathPlannerTrajectory;
+import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.auto.NamedCommands;
 import com.pathplanner.lib.path.PathPlannerPath;
-//import com.pathplanner.lib.*;
 
-import java.util.Vector;
-
-import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import frc.robot.subsystems.Swerve;
 
+/**
+ * Autonomous routines, built ahead of time for both alliances.
+ * <p> {@link #loadAll()} parses, flips and generates every {@link PathLegs path leg} on a background thread at boot.
+ * {@link #buildAll(Swerve)} then composes the commands on the main thread while disabled, since command composition
+ * is not thread safe. Starting auto is a lookup with {@link #getCommand(DriverStation.Alliance)}.
+ * <p> A routine is a sequence of {@link Step steps}: path legs, waits and PathPlanner named commands, so the .auto
+ * files in deploy/pathplanner/autos can be mirrored here.
+ */
 public enum AutonomousRoutines {
   DEFAULT_AUTO(false, "DEFAULT", Commands.print("DEFAULT AUTO SAYS HI")),
-  SQUARE_AUTO(true, "Square", "Square");
+  S_SHAPE("S Shape", PathLegs.SShape),
+  INTAKE_MIDDLE("Intake Middle", PathLegs.IntakeMiddle),
+  SCORE_MIDDLE("Score Middle", PathLegs.IntakeMiddle, PathLegs.ShootMiddle),
+  // same steps as scorePreloadIntakeMiddle.auto and scorePreloadScoreMiddle.auto
+  SCORE_PRELOAD_INTAKE_MIDDLE("Score Preload Intake Middle",
+    Step.waitSeconds(2.0), Step.named("shootSpeaker"), PathLegs.IntakeMiddle, Step.named("intakeNote")),
+  SCORE_PRELOAD_SCORE_MIDDLE("Score Preload Score Middle",
+    Step.waitSeconds(2.0), Step.named("shootSpeaker"), PathLegs.IntakeMiddle, Step.named("intakeNote"));
 
   public final boolean showInDashboard;
-  public final String shuffleboardName, trajectoryName;
+  public final String shuffleboardName;
   public final boolean buildable;
 
-  private PathLegs[] pathOne; //scorePreloadIntakeMiddle + intakemiddle
-
-//   public pathplanner
+  private final Step[] steps;
 
-  public Command command, builtCommand;
+  public Command command;
+  private Command blueCommand, redCommand;
 
-  AutonomousRoutines(
-    boolean show, String shuffleboardName, String trajectoryName
-  ) {
-    showInDashboard = show;
+  AutonomousRoutines(String shuffleboardName, Step... steps) {
+    showInDashboard = true;
     this.shuffleboardName = shuffleboardName;
-    this.trajectoryName = trajectoryName;
+    this.steps = steps;
     buildable = true;
   }
 
-  AutonomousRoutines(String shuffleboardName, String trajectoryName) {
-    this(true, shuffleboardName, trajectoryName);
-  }
-
   AutonomousRoutines(
     boolean show, String shuffleboardName, Command simpleCommand
   ) {
@@ -47,35 +55,111 @@ public enum AutonomousRoutines {
     command = simpleCommand;
     buildable = false;
 
-    trajectoryName = null;
+    steps = new Step[0];
+  }
+
+  /** Loads every path leg for both alliances on a background thread */
+  public static void loadAll() {
+    Thread loader = new Thread(() -> {
+      for (PathLegs leg : PathLegs.values()) {
+        leg.load();
+      }
+    }, "AutoLoader");
+    loader.setDaemon(true);
+    loader.start();
   }
 
+  /**
+   * Builds every routine whose paths have finished loading, call from the main thread while disabled
+   * @param swerve - drivetrain, used to reset odometry to the start of each routine
+   */
+  public static void buildAll(Swerve swerve) {
+    for (AutonomousRoutines routine : values()) {
+      if (!routine.isBuilt()) routine.build(swerve);
+    }
+  }
+
+  /** @return whether both alliance commands are ready */
+  public boolean isBuilt() {
+    return !buildable || (blueCommand != null && redCommand != null);
+  }
+
+  /**
+   * Builds both alliance variants once every leg is loaded, otherwise does nothing
+   * @param swerve - drivetrain, used to reset odometry to the start of the routine
+   */
   public void build(Swerve swerve) {
-    if (buildable) {
-      Vector<PathPlannerTrajectory> pathSet = new Vector<PathPlannerTrajectory>();
-      for (PathLegs p : pathOne){
-        if (p.currentlyExists){
-          //pathSet.add(PathPlannerPath.registerHotReloadPath​(p.name, )); //Hot reload: paths and autos can be updated and regenerated on the robot without redeploying code
-        }
+    if (!buildable) return;
+
+    for (Step step : steps) {
+      if (step instanceof PathLegs && !((PathLegs) step).isLoaded()) return;
+    }
+    blueCommand = buildFor(swerve, false);
+    redCommand = buildFor(swerve, true);
+  }
+
+  private Command buildFor(Swerve swerve, boolean red) {
+    Command[] commands = new Command[steps.length + 1];
+    commands[0] = Commands.none();
+    for (Step step : steps) {
+      if (step instanceof PathLegs) {
+        Pose2d start = ((PathLegs) step).getPath(red).getPreviewStartingHolonomicPose();
+        commands[0] = Commands.runOnce(() -> swerve.resetOdometry(start), swerve);
+        break;
       }
-      // Add path planner initialization
-      // builtCommand = PathPlanner.()
-      // This is also the place to add other configuration and "set up" or "clean up" options
-    } else {
-      builtCommand = command;
+    }
+    for (int i = 0; i < steps.length; i++) {
+      commands[i + 1] = steps[i].build(red);
+    }
+    return Commands.sequence(commands);
+  }
+
+  /**
+   * @param alliance - alliance to run for
+   * @return cached command for that alliance, null if it has not been built yet
+   */
+  public Command getCommand(DriverStation.Alliance alliance) {
+    if (!buildable) return command;
+    return alliance == DriverStation.Alliance.Red ? redCommand : blueCommand;
+  }
+
+  /** One step of a routine */
+  public interface Step {
+    /**
+     * @param red - whether to build for the red alliance
+     * @return new command for this step, only call from the main thread
+     */
+    Command build(boolean red);
+
+    /**
+     * @param seconds - how long to wait
+     * @return step that waits, like a PathPlanner wait command
+     */
+    static Step waitSeconds(double seconds) {
+      return red -> Commands.waitSeconds(seconds);
+    }
+
+    /**
+     * @param name - name registered with {@link NamedCommands}, does nothing if it was never registered
+     * @return step that runs the named command, like a PathPlanner named command
+     */
+    static Step named(String name) {
+      return red -> NamedCommands.getCommand(name);
     }
   }
 
-  public enum PathLegs {
+  public enum PathLegs implements Step {
     IntakeMiddle(true, "IntakeMiddle"), //path
     ShootMiddle(true, "ShootMiddle"), //path
-    
-    scorePreloadIntakeMiddle(true, "scorePreloadIntake"), //auto
-    scorePreloadScoreMiddle(true, "scorePreloadScoreMiddle"); //auto
-    
+    SShape(true, "S shape"); //path
+
     public final boolean currentlyExists;
     public final String name;
 
+    // written by the loader thread before loaded is set
+    private PathPlannerPath bluePath, redPath;
+    private volatile boolean loaded = false;
+
     PathLegs (boolean currentlyExists, String name) {
       this.currentlyExists = currentlyExists;
       this.name = name;
@@ -88,5 +172,40 @@ public enum AutonomousRoutines {
     public String name(String name){
       return name;
     }
+
+    /** Parses the path file, flips it for red and generates both trajectories once so the first auto run is warm */
+    private void load() {
+      if (!currentlyExists) return;
+      try {
+        bluePath = PathPlannerPath.fromPathFile(name);
+        redPath = bluePath.flipPath();
+        // each alliance already has its own path, AutoBuilder must not flip them again
+        bluePath.preventFlipping = true;
+        redPath.preventFlipping = true;
+        bluePath.getTrajectory(new ChassisSpeeds(), bluePath.getPreviewStartingHolonomicPose().getRotation());
+        redPath.getTrajectory(new ChassisSpeeds(), redPath.getPreviewStartingHolonomicPose().getRotation());
+        loaded = true;
+      } catch (RuntimeException e) {
+        DataLogManager.log("Could not load path " + name + ": " + e.getMessage());
+      }
+    }
+
+    /** @return whether both alliance paths are ready */
+    public boolean isLoaded() {
+      return loaded;
+    }
+
+    @Override
+    public Command build(boolean red) {
+      return AutoBuilder.followPath(getPath(red));
+    }
+
+    /**
+     * @param red - whether to get the path flipped for the red alliance
+     * @return loaded path
+     */
+    public PathPlannerPath getPath(boolean red) {
+      return red ? redPath : bluePath;
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package frc.robot.commands;
+
+import java.util.Set;
+
+import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.path.PathPlannerPath;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import frc.robot.subsystems.*;
+import frc.robot.util.Pathfinder;
+
+/**
+ * Plans a path around the field obstacles from wherever the robot is and follows it, e.g. to the amp or source.
+ * Drives straight to the target when the navgrid did not load.
+ */
+public final class DriveToPose {
+  private DriveToPose() {}
+
+  /**
+   * Plans when the command starts, so the path begins at the robot's pose at that moment
+   * @param swerve - Swerve object
+   * @param pathfinder - Pathfinder to plan with, null to drive straight
+   * @param blueTarget - pose to drive to on the blue alliance
+   * @param redTarget - pose to drive to on the red alliance
+   * @return command following the planned path, ends right away when there is no path
+   */
+  public static Command to(Swerve swerve, Pathfinder pathfinder, Pose2d blueTarget, Pose2d redTarget) {
+    return Commands.defer(() -> {
+        PathPlannerPath path = plan(swerve, pathfinder, blueTarget, redTarget);
+        return path != null ? AutoBuilder.followPath(path) : Commands.none();
+      }, Set.of(swerve))
+      .finallyDo(swerve::stopModules)
+      .withName("DriveToPose");
+  }
+
+  /** @return path from the robot to the target for the current alliance, or null when no path exists */
+  private static PathPlannerPath plan(Swerve swerve, Pathfinder pathfinder, Pose2d blueTarget, Pose2d redTarget) {
+    var alliance = DriverStation.getAlliance();
+    Pose2d target = alliance.isPresent() && alliance.get() == DriverStation.Alliance.Red ? redTarget : blueTarget;
+
+    return pathfinder != null
+      ? pathfinder.findPath(swerve.getPose(), target)
+      : Pathfinder.directPath(swerve.getPose(), target);
+  }
+}
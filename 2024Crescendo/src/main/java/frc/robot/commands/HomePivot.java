@@ -33,10 +33,7 @@ public class HomePivot extends Command {
 
   @Override
   public boolean isFinished() {
-    pivot.setpoint.velocity = 0;
-    pivot.setpoint.position = pivot.getAbsPos();
-    pivot.goal.velocity = 0;
-    pivot.goal.position = pivot.getAbsPos();
+    pivot.holdPosition(pivot.getAbsPos());
 
     SmartDashboard.putString("Did we finish", "yes");
 
@@ -6,7 +6,6 @@ package frc.robot.commands;
 
 import edu.wpi.first.wpilibj2.command.Command;
 
-import frc.robot.Constants;
 import frc.robot.subsystems.Climb;
 
 public class LowerClimbUntilLatch extends Command {
@@ -19,12 +18,13 @@ public class LowerClimbUntilLatch extends Command {
 
   // Called when the command is initially scheduled.
   @Override
-  public void initialize() {}
+  public void initialize() {
+    // the sensor interrupt stops the motor, no need to wait for the loop
+    climb.lowerUntilLatch(Climb.LatchSource.SENSOR);
+  }
 
   @Override
-  public void execute() {
-    climb.lowerAt(Constants.Climb.AUTOMATIC_LOWER_SPEED); 
-  }
+  public void execute() {}
 
   @Override
   public void end(boolean interrupted) {
@@ -33,6 +33,6 @@ public class LowerClimbUntilLatch extends Command {
 
   @Override
   public boolean isFinished() {
-    return !climb.getSensorValue();
+    return climb.isLatched();
   }
 }
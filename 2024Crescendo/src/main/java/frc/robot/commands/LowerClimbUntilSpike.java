@@ -5,39 +5,30 @@
 
 package frc.robot.commands;
 
-import java.util.function.DoubleSupplier;
-
-import edu.wpi.first.wpilibj.PowerDistribution;
 import edu.wpi.first.wpilibj2.command.Command;
 
-import frc.robot.Constants;
 import frc.robot.subsystems.Climb;
 
 public class LowerClimbUntilSpike extends Command {
   private Climb climb;
-  private PowerDistribution pdh;
-  private int pdhPort;
 
   /**
    * Creates a new LowerClimbUntilSpike object
-   * @param pdhPort - PDH port for that motor
-   * @param pdh - Power Distribution object
+   * <p> Lowers until the motor's stator current spikes with the rotor stalled, detected by the Climb off the main loop
    * @param climb - Climb object
    */
-  public LowerClimbUntilSpike(int _pdhPort, PowerDistribution _pdh, Climb _climb) {
+  public LowerClimbUntilSpike(Climb _climb) {
     climb = _climb;
-    pdh = _pdh;
-    pdhPort = _pdhPort;
     addRequirements(climb);
   }
 
   @Override
-  public void initialize() {}
+  public void initialize() {
+    climb.lowerUntilLatch(Climb.LatchSource.CURRENT);
+  }
 
   @Override
-  public void execute() {
-    climb.lowerAt(Constants.Climb.AUTOMATIC_LOWER_SPEED);
-  }
+  public void execute() {}
 
   @Override
   public void end(boolean interrupted) {
@@ -46,7 +37,6 @@ public class LowerClimbUntilSpike extends Command {
   
   @Override
   public boolean isFinished() {
-    double current = pdh.getCurrent(pdhPort);
-    return (current >= Constants.Climb.SPIKE_CURRENT); //latched
+    return climb.isLatched();
   }
 }
@@ -39,10 +39,7 @@ public class MovePivot extends Command {
   public boolean isFinished() {
     /*if (desiredRev==Constants.Pivot.INTAKE_SAFE){
       pivot.pivotHoming();
-      pivot.setpoint.velocity = 0;
-      pivot.setpoint.position = pivot.getAbsPos();
-      pivot.goal.velocity = 0;
-      pivot.goal.position = pivot.getAbsPos();
+      pivot.holdPosition(pivot.getAbsPos());
     }*/
     return pivot.isReached();
   }
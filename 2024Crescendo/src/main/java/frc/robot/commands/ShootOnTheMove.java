@@ -0,0 +1,85 @@
+package frc.robot.commands;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.filter.SlewRateLimiter;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants;
+import frc.robot.subsystems.Pivot;
+import frc.robot.subsystems.Shooter;
+import frc.robot.subsystems.Swerve;
+import frc.robot.util.ShotSolver;
+
+/** Lets the driver translate freely while the robot faces, angles and spins up for a moving speaker shot */
+public class ShootOnTheMove extends Command {
+  private final Swerve swerve;
+  private final Shooter shooter;
+  private final Pivot pivot;
+  private final ShotSolver solver;
+  private final DoubleSupplier xSupplier, ySupplier;
+  private SlewRateLimiter xLimiter, yLimiter;
+
+  private final ShotSolver.Solution solution = new ShotSolver.Solution();
+  private final PIDController headingController = new PIDController(Constants.ShotSolver.HEADING_kP, 0, 0);
+
+  /**
+   * Creates a new ShootOnTheMove
+   * @param swerve - Swerve object
+   * @param shooter - Shooter object
+   * @param pivot - Pivot object
+   * @param solver - solver using the shot table
+   * @param xSupplier - driver forward input
+   * @param ySupplier - driver left input
+   */
+  public ShootOnTheMove(Swerve swerve, Shooter shooter, Pivot pivot, ShotSolver solver, DoubleSupplier xSupplier, DoubleSupplier ySupplier) {
+    this.swerve = swerve;
+    this.shooter = shooter;
+    this.pivot = pivot;
+    this.solver = solver;
+    this.xSupplier = xSupplier;
+    this.ySupplier = ySupplier;
+    addRequirements(swerve, shooter, pivot);
+
+    headingController.enableContinuousInput(-Math.PI, Math.PI);
+    headingController.setTolerance(Math.toRadians(Constants.Vision.DEGREE_ERROR));
+  }
+
+  /** @return whether the robot is facing the virtual target */
+  public boolean isAimed() {
+    return solution.valid && headingController.atSetpoint();
+  }
+
+  @Override
+  public void initialize() {
+    headingController.reset();
+  }
+
+  @Override
+  public void execute() {
+    solver.solve(swerve.getPose(), swerve.getRobotRelativeSpeeds(), swerve.getSpeaker(), solution);
+
+    double xSpeed = SwerveDrive.cleanAndScaleInput(0.00, xSupplier.getAsDouble(), xLimiter, Constants.Swerve.SWERVE_MAX_SPEED);
+    double ySpeed = SwerveDrive.cleanAndScaleInput(0.00, ySupplier.getAsDouble(), yLimiter, Constants.Swerve.SWERVE_MAX_SPEED);
+    double rotationSpeed = solution.headingVelocity
+      + headingController.calculate(swerve.getPose().getRotation().getRadians(), solution.headingRadians);
+    swerve.drive(xSpeed, ySpeed, rotationSpeed, true);
+
+    if (solution.valid) {
+      shooter.runShooter(solution.shot.topVelocity, Constants.Shooter.SPEAKER_TOP_ACCELERATION,
+        solution.shot.bottomVelocity, Constants.Shooter.SPEAKER_BOTTOM_ACCELERATION);
+      pivot.moveTo(solution.shot.pivotRotations);
+    }
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    swerve.stopModules();
+    shooter.stopMotors();
+  }
+
+  @Override
+  public boolean isFinished() {
+    return false;
+  }
+}
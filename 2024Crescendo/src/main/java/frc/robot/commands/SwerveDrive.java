@@ -3,9 +3,6 @@ package frc.robot.commands;
 import java.util.function.DoubleSupplier;
 
 import edu.wpi.first.math.filter.SlewRateLimiter;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants;
 import frc.robot.subsystems.Swerve;
@@ -23,7 +20,15 @@ public class SwerveDrive extends Command {
     addRequirements(swerve);
   }
 
-  private double cleanAndScaleInput(double deadband, double input, SlewRateLimiter limiter, double speedScaling) {
+  /**
+   * Cubes a joystick axis, applies the deadband and scales it to a speed, without allocating
+   * @param deadband - cubed inputs at or below this are zero
+   * @param input - joystick axis from -1 to 1
+   * @param limiter - unused
+   * @param speedScaling - speed at full input
+   * @return speed to drive
+   */
+  public static double cleanAndScaleInput(double deadband, double input, SlewRateLimiter limiter, double speedScaling) {
     input = Math.pow(input, 3);
     input = Math.abs(input) > deadband ? input : 0;
     input *= speedScaling;
@@ -36,10 +41,7 @@ public class SwerveDrive extends Command {
     double xSpeed = cleanAndScaleInput(0.00, xSupplier.getAsDouble(), xLimiter, Constants.Swerve.SWERVE_MAX_SPEED);
     double ySpeed = cleanAndScaleInput(0.00, ySupplier.getAsDouble(), yLimiter, Constants.Swerve.SWERVE_MAX_SPEED);
     double rotationSpeed = cleanAndScaleInput(0.00, rotationSupplier.getAsDouble(), rotationLimiter, Constants.Swerve.SWERVE_ROTATION_MAX_SPEED_IN_RAD);
-    ChassisSpeeds chassisSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(xSpeed, ySpeed, rotationSpeed, swerve.getRotation2d());
-    SwerveModuleState[] moduleState = Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(chassisSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(moduleState, Constants.Swerve.SWERVE_MAX_SPEED);
-    swerve.setModuleStates(moduleState);
+    swerve.drive(xSpeed, ySpeed, rotationSpeed, true);
   }
 
   @Override
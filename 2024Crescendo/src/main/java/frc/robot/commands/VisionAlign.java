@@ -1,54 +1,41 @@
 package frc.robot.commands;
 
-import java.util.function.BooleanSupplier;
-import java.util.function.DoubleSupplier;
-
 import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.filter.SlewRateLimiter;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants;
 import frc.robot.subsystems.*;
 
+/** Turns the robot to face the speaker using the vision-fused field pose, so it can align from anywhere on the field */
 public class VisionAlign extends Command {
-  private double lastPosition;
   private final Swerve swerve;
-  private final Vision vision;
+  private Translation2d target;
 
-  private final ProfiledPIDController translateController =
-    new ProfiledPIDController(3, 0, 0.0, Constants.Swerve.SWERVE_TRANSLATION_PID_CONSTRAINTS);
+  private final ProfiledPIDController angleController =
+    new ProfiledPIDController(5, 0, 0.0, Constants.Vision.ALIGN_CONSTRAINTS);
 
-  public VisionAlign(Swerve swerve, Vision vision) {
+  public VisionAlign(Swerve swerve) {
     this.swerve = swerve;
-    this.vision = vision;
+    addRequirements(swerve);
 
-    translateController.setTolerance(0.0001);
-    translateController.enableContinuousInput(0, 1);
+    angleController.setTolerance(Math.toRadians(Constants.Vision.DEGREE_ERROR));
+    angleController.enableContinuousInput(-Math.PI, Math.PI);
   }
 
-  public void initialize() {
-    translateController.reset(swerve.getPose().getY(), 0);
-    lastPosition = swerve.getPose().getY();
+  /** @return heading from the robot to the speaker in radians */
+  private double targetHeading() {
+    Translation2d toTarget = target.minus(swerve.getPose().getTranslation());
+    return Math.atan2(toTarget.getY(), toTarget.getX());
   }
 
-  private double cleanAndScaleInput(double deadband, double input, double speedScaling) {
-    input = Math.pow(input, 3);
-    input = Math.abs(input) > deadband ? input : 0;
-    input *= speedScaling;
-
-    return input;
+  public void initialize() {
+    target = swerve.getSpeaker();
+    angleController.reset(swerve.getPose().getRotation().getRadians(), 0);
   }
 
   public void execute() {
-    // double translateSpeed = cleanAndScaleInput(0.00, translateController.calculate(swerve.getPose().getY(), -vision.getOffset()), 1);
-    double translateSpeed = translateController.calculate(swerve.getPose().getY(), lastPosition+(vision.getOffset()*0.0254));
-
-    ChassisSpeeds chassisSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(0, translateSpeed, 0, swerve.getRotation2d());
-    SwerveModuleState[] moduleState = Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(chassisSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(moduleState, Constants.Swerve.SWERVE_MAX_SPEED);
-    swerve.setModuleStates(moduleState);
+    double rotSpeed = angleController.calculate(swerve.getPose().getRotation().getRadians(), targetHeading());
+    swerve.drive(0, 0, rotSpeed, true);
   }
 
   public void end (boolean interrupted) {
@@ -56,6 +43,6 @@ public class VisionAlign extends Command {
   }
 
   public boolean isFinished() {
-    return vision.getIsInRange();
+    return angleController.atGoal();
   }
 }
@@ -5,9 +5,6 @@ import java.util.function.DoubleSupplier;
 
 import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.filter.SlewRateLimiter;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants;
 import frc.robot.subsystems.Swerve;
@@ -30,7 +27,7 @@ public class WallSnapDrive extends Command {
   }
 
   private double currentHeading() {
-    return swerve.getRotation2d().getDegrees();
+    return swerve.getYaw();
   }
 
   public void initialize() {
@@ -53,10 +50,7 @@ public class WallSnapDrive extends Command {
     double desiredHeading = headingSupplier.getAsDouble() != -1 ? headingSupplier.getAsDouble() : lastHeading;
     double rotSpeed = angleController.calculate(currentHeading(), desiredHeading);
 
-    ChassisSpeeds chassisSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(xSpeed, ySpeed, rotSpeed, swerve.getRotation2d());
-    SwerveModuleState[] moduleState = Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(chassisSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(moduleState, Constants.Swerve.SWERVE_MAX_SPEED);
-    swerve.setModuleStates(moduleState);
+    swerve.drive(xSpeed, ySpeed, rotSpeed, true);
   }
   
   public void end (boolean interrupted) {
@@ -0,0 +1,74 @@
+package frc.robot.modules;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Allocation-free swerve inverse kinematics: chassis speeds in, module speeds and angles out through reused arrays.
+ * <p> Has no hardware, so it can be benchmarked and tested off the robot.
+ */
+public class ModuleKinematics {
+    private final double[] moduleX, moduleY;
+
+    /** module speeds in m/s from the last {@link #calculate} */
+    public final double[] speeds;
+    /** module angles in radians from the last {@link #calculate} */
+    public final double[] angles;
+
+    /**
+     * Creates a new ModuleKinematics
+     * @param locations - module locations relative to the robot center, in kinematics order
+     */
+    public ModuleKinematics(Translation2d... locations) {
+        moduleX = new double[locations.length];
+        moduleY = new double[locations.length];
+        speeds = new double[locations.length];
+        angles = new double[locations.length];
+
+        for (int i = 0; i < locations.length; i++) {
+            moduleX[i] = locations[i].getX();
+            moduleY[i] = locations[i].getY();
+        }
+    }
+
+    /**
+     * Computes module speeds and angles, scaled down together if any module is over maxSpeed
+     * @param vx - forward speed in m/s
+     * @param vy - left speed in m/s
+     * @param omega - counterclockwise rotation speed in rad/s
+     * @param headingRadians - robot heading, used when fieldRelative
+     * @param fieldRelative - whether vx and vy are relative to the field
+     * @param maxSpeed - fastest any module may go in m/s
+     */
+    public void calculate(double vx, double vy, double omega, double headingRadians, boolean fieldRelative, double maxSpeed) {
+        if (fieldRelative) {
+            double cos = Math.cos(headingRadians), sin = Math.sin(headingRadians);
+            double robotVx = vx * cos + vy * sin;
+            vy = -vx * sin + vy * cos;
+            vx = robotVx;
+        }
+
+        if (vx == 0 && vy == 0 && omega == 0) {
+            // hold the last module angles when stopped, same as SwerveDriveKinematics
+            for (int i = 0; i < speeds.length; i++) {
+                speeds[i] = 0;
+            }
+            return;
+        }
+
+        double fastest = 0;
+        for (int i = 0; i < speeds.length; i++) {
+            double moduleVx = vx - omega * moduleY[i];
+            double moduleVy = vy + omega * moduleX[i];
+            speeds[i] = Math.hypot(moduleVx, moduleVy);
+            angles[i] = Math.atan2(moduleVy, moduleVx);
+            fastest = Math.max(fastest, speeds[i]);
+        }
+
+        if (fastest > maxSpeed) {
+            double scale = maxSpeed / fastest;
+            for (int i = 0; i < speeds.length; i++) {
+                speeds[i] *= scale;
+            }
+        }
+    }
+}
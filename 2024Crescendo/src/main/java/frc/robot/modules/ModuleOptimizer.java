@@ -0,0 +1,84 @@
+package frc.robot.modules;
+
+import frc.robot.Constants;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.util.Units;
+
+/**
+ * Allocation-free module optimize and setpoint change tracking, the math behind {@link SwerveModule#setState}.
+ * <p> Has no hardware, so it can be benchmarked, tested and warmed up off the robot.
+ */
+public class ModuleOptimizer {
+    private double speed, rotations;
+    private boolean flipped;
+    private double lastSteerRotations = Double.NaN, lastDriveVelocity = Double.NaN;
+
+    /**
+     * Flips the module instead of turning more than 90 degrees
+     * @param speed - desired speed in m/s
+     * @param desiredRadians - desired module angle
+     * @param currentRadians - current module angle
+     */
+    public void optimize(double speed, double desiredRadians, double currentRadians) {
+        flipped = shouldFlip(desiredRadians, currentRadians);
+        this.speed = flipped ? -speed : speed;
+        rotations = Units.radiansToRotations(MathUtil.angleModulus(flipped ? desiredRadians + Math.PI : desiredRadians));
+    }
+
+    /**
+     * @param desiredRadians - desired module angle
+     * @param currentRadians - current module angle
+     * @return whether to steer to the opposite angle and drive backwards, true when desired is more than 90 degrees away
+     */
+    public static boolean shouldFlip(double desiredRadians, double currentRadians) {
+        return Math.abs(MathUtil.angleModulus(desiredRadians - currentRadians)) > Math.PI / 2;
+    }
+
+    /** @return optimized speed in m/s from the last {@link #optimize} */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /** @return optimized module angle in rotations, wrapped to +-0.5, from the last {@link #optimize} */
+    public double getRotations() {
+        return rotations;
+    }
+
+    /** @return whether the last {@link #optimize} flipped the module */
+    public boolean isFlipped() {
+        return flipped;
+    }
+
+    /** @return drive motor velocity in rps for the optimized speed, negated for the module's inverted drive */
+    public double getDriveVelocity() {
+        return -speed / Constants.Swerve.WHEEL_CIRCUMFERENCE;
+    }
+
+    /** @return whether the optimized angle moved past the tolerance since the last {@link #steerSent} */
+    public boolean steerChanged() {
+        // written as !(<=) so the NaN left by invalidate() always resends
+        return !(Math.abs(rotations - lastSteerRotations) <= Constants.Swerve.STEER_SETPOINT_TOLERANCE);
+    }
+
+    /** @return whether the drive velocity moved past the tolerance since the last {@link #driveSent} */
+    public boolean driveChanged() {
+        return !(Math.abs(getDriveVelocity() - lastDriveVelocity) <= Constants.Swerve.DRIVE_SETPOINT_TOLERANCE);
+    }
+
+    /** Records the optimized angle as sent to the steer motor */
+    public void steerSent() {
+        lastSteerRotations = rotations;
+    }
+
+    /** Records the drive velocity as sent to the drive motor */
+    public void driveSent() {
+        lastDriveVelocity = getDriveVelocity();
+    }
+
+    /** Forgets the sent setpoints so the next changes always send, for when something else drove the motors */
+    public void invalidate() {
+        lastSteerRotations = Double.NaN;
+        lastDriveVelocity = Double.NaN;
+    }
+}
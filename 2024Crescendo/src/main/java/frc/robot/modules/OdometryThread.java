@@ -0,0 +1,134 @@
+package frc.robot.modules;
+
+import java.util.function.DoubleSupplier;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+
+import edu.wpi.first.wpilibj.Threads;
+import edu.wpi.first.wpilibj.Timer;
+
+import frc.robot.Constants;
+
+/**
+ * Samples every module's drive and steer signals as one synchronized group on the CANivore and queues
+ * timestamped odometry samples for the main loop to apply.
+ * <p> Samples are preallocated and reused and only hold primitives, so the thread does not create garbage once running.
+ * The Rotation2d and SwerveModulePosition objects the pose estimator takes are built on the main loop when applied.
+ */
+public class OdometryThread extends Thread {
+    /** One synchronized odometry sample */
+    public static class Sample {
+        public double timestamp;
+        /** gyro yaw in radians, counterclockwise positive */
+        public double yaw;
+        /** gyro yaw rate in rad/s, counterclockwise positive */
+        public double yawRate;
+        /** module distances in meters, latency compensated */
+        public final double[] distances = new double[4];
+        /** module angles in radians, latency compensated */
+        public final double[] angles = new double[4];
+        /** measured wheel speeds in m/s, in the same direction as the distances */
+        public final double[] velocities = new double[4];
+    }
+
+    /** Applies a drained sample, called with the queue locked */
+    public interface SampleConsumer {
+        void accept(Sample sample);
+    }
+
+    private final SwerveModule[] modules;
+    private final DoubleSupplier yawSupplier, yawRateSupplier;
+    private final BaseStatusSignal[] signals;
+
+    private final Sample[] queue = new Sample[Constants.Swerve.ODOMETRY_QUEUE_SIZE];
+    private int head = 0, size = 0;
+
+    private volatile int failedWaits = 0;
+    private volatile double frequency = 0;
+
+    /**
+     * Creates a new OdometryThread
+     * @param yawSupplier - gyro yaw in degrees, must be safe to read from this thread
+     * @param yawRateSupplier - gyro yaw rate in degrees per second, must be safe to read from this thread
+     * @param modules - modules in kinematics order
+     */
+    public OdometryThread(DoubleSupplier yawSupplier, DoubleSupplier yawRateSupplier, SwerveModule... modules) {
+        super("OdometryThread");
+        setDaemon(true);
+
+        this.modules = modules;
+        this.yawSupplier = yawSupplier;
+        this.yawRateSupplier = yawRateSupplier;
+
+        signals = new BaseStatusSignal[modules.length * 4];
+        for (int i = 0; i < modules.length; i++) {
+            System.arraycopy(modules[i].getOdometrySignals(), 0, signals, i * 4, 4);
+        }
+
+        for (int i = 0; i < queue.length; i++) {
+            queue[i] = new Sample();
+        }
+    }
+
+    @Override
+    public void run() {
+        BaseStatusSignal.setUpdateFrequencyForAll(Constants.Swerve.ODOMETRY_FREQUENCY, signals);
+        Threads.setCurrentThreadPriority(true, 1);
+
+        double lastTime = Timer.getFPGATimestamp();
+        while (!isInterrupted()) {
+            // wait for a whole new frame of every signal so drive and steer are sampled together
+            StatusCode status = BaseStatusSignal.waitForAll(2.0 / Constants.Swerve.ODOMETRY_FREQUENCY, signals);
+            if (!status.isOK()) {
+                failedWaits++;
+                continue;
+            }
+
+            double now = Timer.getFPGATimestamp();
+            frequency = 1.0 / Math.max(now - lastTime, 1e-6);
+            lastTime = now;
+
+            synchronized (this) {
+                // overwrite the oldest sample if the main loop fell behind
+                if (size == queue.length) {
+                    head = (head + 1) % queue.length;
+                    size--;
+                }
+                Sample sample = queue[(head + size) % queue.length];
+                size++;
+
+                sample.timestamp = now - signals[0].getTimestamp().getLatency();
+                sample.yaw = Math.toRadians(yawSupplier.getAsDouble());
+                sample.yawRate = Math.toRadians(yawRateSupplier.getAsDouble());
+                for (int i = 0; i < modules.length; i++) {
+                    sample.distances[i] = modules[i].sampleOdometryDistance();
+                    sample.angles[i] = modules[i].sampleOdometryAngle();
+                    sample.velocities[i] = modules[i].sampleOdometryVelocity();
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands every queued sample, oldest first, to the consumer and empties the queue
+     * @param consumer - called once per sample
+     */
+    public synchronized void drain(SampleConsumer consumer) {
+        while (size > 0) {
+            consumer.accept(queue[head]);
+            head = (head + 1) % queue.length;
+            size--;
+        }
+    }
+
+    /** @return measured sample rate in hz */
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /** @return number of group waits that timed out or errored */
+    public int getFailedWaits() {
+        return failedWaits;
+    }
+}
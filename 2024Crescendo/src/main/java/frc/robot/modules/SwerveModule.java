@@ -1,9 +1,13 @@
 package frc.robot.modules;
 
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.CANcoderConfiguration;
+import com.ctre.phoenix6.configs.CurrentLimitsConfigs;
 import com.ctre.phoenix6.configs.TalonFXConfiguration;
 import com.ctre.phoenix6.controls.PositionVoltage;
 import com.ctre.phoenix6.controls.VelocityVoltage;
+import com.ctre.phoenix6.controls.VoltageOut;
 import com.ctre.phoenix6.hardware.CANcoder;
 import com.ctre.phoenix6.hardware.TalonFX;
 import com.ctre.phoenix6.signals.AbsoluteSensorRangeValue;
@@ -11,18 +15,33 @@ import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import com.ctre.phoenix6.configs.MotorOutputConfigs;
+import com.ctre.phoenix6.sim.CANcoderSimState;
+import com.ctre.phoenix6.sim.ChassisReference;
+import com.ctre.phoenix6.sim.TalonFXSimState;
+
+import java.util.concurrent.CompletableFuture;
 
 // import statements
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.networktables.StructArrayPublisher;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DCMotorSim;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardContainer;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardLayout;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import frc.robot.Constants;
+import frc.robot.util.CanBusMonitor;
+import frc.robot.util.DeviceCommandQueue;
+import frc.robot.util.DeviceConfigurator;
+import frc.robot.util.TelemetryLogger;
+import frc.robot.util.WarmUp;
 
 
 
@@ -32,10 +51,31 @@ public class SwerveModule {
     private TalonFX steerController;
     public CANcoder analogEncoder;
 
+    // main loop signals, refreshed together once per loop into inputs
+    private final StatusSignal<Double> drivePosition, driveVelocity, steerPosition, steerVelocity, absolutePosition;
+    private final SwerveModuleInputs inputs = new SwerveModuleInputs();
+
+    // copies owned by the odometry thread, status signals are not thread safe
+    private final StatusSignal<Double> odometryDrivePosition, odometryDriveVelocity;
+    private final StatusSignal<Double> odometrySteerPosition, odometrySteerVelocity;
 
     private SwerveModuleState initialState;
 
-    private final StructArrayPublisher<SwerveModuleState> publisher;
+    // boot configs, runtime applies wait for these so the full config cannot revert them
+    private final CompletableFuture<Boolean> driveConfigured, steerConfigured;
+
+    // reused control requests and last sent setpoints so setState does not allocate
+    private final PositionVoltage steerRequest = new PositionVoltage(0);
+    private final VelocityVoltage driveRequest = new VelocityVoltage(0);
+    private final VoltageOut driveVoltageRequest = new VoltageOut(0), steerVoltageRequest = new VoltageOut(0);
+    private final ModuleOptimizer optimizer = new ModuleOptimizer();
+
+    // physics models, only created in simulation
+    private DCMotorSim driveSim, steerSim;
+
+    // desired speed and angle, measured speed and angle
+    private final TelemetryLogger.Channel stateChannel;
+    private final double[] loggedState = new double[4];
 
     ShuffleboardTab tuningTab = Shuffleboard.getTab("Tuning");
     public double Currangle;
@@ -51,6 +91,7 @@ public class SwerveModule {
 
     public SwerveModule(String name, int powerIdx, int steerIdx, int encoderIdx, ShuffleboardLayout container) {
         this.name = name;
+        stateChannel = TelemetryLogger.getInstance().channel("Swerve/" + name + "/State", loggedState.length);
 
         if (name == "BackLeft") {
             tuningTab.addNumber("YES Current Angle", () -> Currangle);
@@ -65,13 +106,13 @@ public class SwerveModule {
         }
 
         // instantiate
-        powerController = new TalonFX(powerIdx, "Canivore");
-        steerController = new TalonFX(steerIdx, "Canivore");
-        analogEncoder = new CANcoder(encoderIdx, "Canivore");
+        powerController = new TalonFX(powerIdx, Constants.Swerve.CANBUS);
+        steerController = new TalonFX(steerIdx, Constants.Swerve.CANBUS);
+        analogEncoder = new CANcoder(encoderIdx, Constants.Swerve.CANBUS);
 
         //configure cancoder
         CANcoderConfiguration ccdConfigs = new CANcoderConfiguration();
-        var cancoderConfig = analogEncoder.getConfigurator();
+        DeviceConfigurator configurator = DeviceConfigurator.getInstance();
 
         ccdConfigs.MagnetSensor.AbsoluteSensorRange = AbsoluteSensorRangeValue.Signed_PlusMinusHalf;
 
@@ -108,11 +149,10 @@ public class SwerveModule {
         //     ccdConfigs.MagnetSensor.MagnetOffset = -153.808484/360;
         // }
 
-        cancoderConfig.apply(ccdConfigs);
+        configurator.configure(name + " CANcoder", analogEncoder, ccdConfigs);
 
         //configure power
         TalonFXConfiguration powerConfig = new TalonFXConfiguration();
-        var powerControllerConfig = powerController.getConfigurator();
         
         powerConfig.Slot0.kS = Constants.Swerve.POWER_kS; 
         powerConfig.Slot0.kV = Constants.Swerve.POWER_kV; 
@@ -123,14 +163,12 @@ public class SwerveModule {
 
         powerConfig.Feedback.SensorToMechanismRatio = Constants.Swerve.DRIVE_GEAR_RATIO ; 
 
-        powerConfig.CurrentLimits.StatorCurrentLimitEnable = true;
-        powerConfig.CurrentLimits.StatorCurrentLimit = 15;
+        powerConfig.CurrentLimits = driveLimits(Constants.Power.DRIVE_MIN);
 
-        powerControllerConfig.apply(powerConfig);
+        driveConfigured = configurator.configure(name + " Drive", powerController, powerConfig);
 
         //configure steer
         TalonFXConfiguration steerConfig = new TalonFXConfiguration();
-        var steerControllerConfig = steerController.getConfigurator();
 
         steerConfig.Slot0.kS = Constants.Swerve.STEER_kS;
         steerConfig.Slot0.kV = Constants.Swerve.STEER_kV;
@@ -139,14 +177,14 @@ public class SwerveModule {
         steerConfig.Slot0.kI = Constants.Swerve.STEER_kI; 
         steerConfig.Slot0.kD = Constants.Swerve.STEER_kD; 
 
-        steerConfig.MotionMagic.MotionMagicCruiseVelocity = 3; //rps (4)
-        steerConfig.MotionMagic.MotionMagicAcceleration = 10; //rps/s
+        steerConfig.MotionMagic.MotionMagicCruiseVelocity = Constants.Swerve.STEER_MAX_VELOCITY; //rps
+        steerConfig.MotionMagic.MotionMagicAcceleration = Constants.Swerve.STEER_MAX_ACCELERATION; //rps/s
         steerConfig.MotionMagic.MotionMagicJerk = 0; //rps/s/s
         steerConfig.Feedback.SensorToMechanismRatio = 1;
         steerConfig.MotorOutput.Inverted = InvertedValue.Clockwise_Positive;
 
         steerConfig.CurrentLimits.StatorCurrentLimitEnable = true;
-        steerConfig.CurrentLimits.StatorCurrentLimit = 15;
+        steerConfig.CurrentLimits.StatorCurrentLimit = Constants.Swerve.STEER_STATOR_LIMIT;
 
         steerConfig.Feedback.FeedbackRemoteSensorID = analogEncoder.getDeviceID(); 
         steerConfig.Feedback.FeedbackSensorSource = FeedbackSensorSourceValue.RemoteCANcoder;
@@ -154,12 +192,19 @@ public class SwerveModule {
 
         steerConfig.ClosedLoopGeneral.ContinuousWrap = true;
 
-        steerControllerConfig.apply(steerConfig);
+        steerConfigured = configurator.configure(name + " Steer", steerController, steerConfig);
 
-        steerController.getPosition().refresh();
-        analogEncoder.getAbsolutePosition().refresh();
+        drivePosition = powerController.getPosition();
+        driveVelocity = powerController.getVelocity();
+        steerPosition = steerController.getPosition();
+        steerVelocity = steerController.getVelocity();
+        absolutePosition = analogEncoder.getAbsolutePosition();
+
+        BaseStatusSignal.refreshAll(getSignals());
+        updateInputs();
 
         powerController.setPosition(0);
+        inputs.drivePositionRotations = 0; // the refreshed frame above is from before the reset
 
         Rotation2d initialStartingAngle = new Rotation2d(0);
         initialState = new SwerveModuleState(0, initialStartingAngle);
@@ -168,10 +213,35 @@ public class SwerveModule {
         powerController.stopMotor();
         steerController.stopMotor();
 
+        if (RobotBase.isSimulation()) {
+            driveSim = new DCMotorSim(DCMotor.getFalcon500(1), Constants.Swerve.DRIVE_GEAR_RATIO, Constants.Swerve.SIM_DRIVE_MOI);
+            steerSim = new DCMotorSim(DCMotor.getFalcon500(1), Constants.Swerve.STEER_GEAR_RATIO, Constants.Swerve.SIM_STEER_MOI);
+            steerController.getSimState().Orientation = ChassisReference.Clockwise_Positive;
+        }
+
         addDashboardEntries(container);
 
+        CanBusMonitor.getInstance().addSignalPlan(this::applySignalPlan);
 
-        publisher = NetworkTableInstance.getDefault().getStructArrayTopic("/SwerveStates", SwerveModuleState.struct).publish();
+        odometryDrivePosition = drivePosition.clone();
+        odometryDriveVelocity = driveVelocity.clone();
+        odometrySteerPosition = steerPosition.clone();
+        odometrySteerVelocity = steerVelocity.clone();
+    }
+   
+    /**
+     * Keeps only the signals the loops read and turns the rest off. Drive and steer position and velocity are already
+     * at the odometry frequency
+     */
+    private void applySignalPlan() {
+        absolutePosition.setUpdateFrequency(Constants.Can.STATUS_FREQUENCY);
+        // the steer Talon closes its loop on these
+        BaseStatusSignal.setUpdateFrequencyForAll(Constants.Can.REMOTE_SENSOR_FREQUENCY,
+            analogEncoder.getPosition(), analogEncoder.getVelocity());
+
+        powerController.optimizeBusUtilization();
+        steerController.optimizeBusUtilization();
+        analogEncoder.optimizeBusUtilization();
     }
    
     public void resetEncoder() {
@@ -179,114 +249,284 @@ public class SwerveModule {
     }
 
 
-    //check to make sure steerController.getPosition will give us the angle?
+    /** @return signals to refresh once per loop, batch these across modules with {@link BaseStatusSignal#refreshAll} */
+    public BaseStatusSignal[] getSignals() {
+        return new BaseStatusSignal[] {drivePosition, driveVelocity, steerPosition, steerVelocity, absolutePosition};
+    }
+
+    /** Copies the already refreshed signals into the snapshot, call once per loop after refreshing */
+    public void updateInputs() {
+        inputs.drivePositionRotations = drivePosition.getValueAsDouble();
+        inputs.driveVelocityRps = driveVelocity.getValueAsDouble();
+        inputs.steerPositionRotations = steerPosition.getValueAsDouble();
+        inputs.steerVelocityRps = steerVelocity.getValueAsDouble();
+        inputs.absolutePositionRotations = absolutePosition.getValueAsDouble();
+        inputs.timestamp = Timer.getFPGATimestamp();
+    }
+
+    /** @return sensor snapshot from this loop */
+    public SwerveModuleInputs getInputs() {
+        return inputs;
+    }
+
+    // drive velocity/position are in wheel rotations (SensorToMechanismRatio), negated to match setState
     public SwerveModuleState getState() {
-        return new SwerveModuleState(powerController.getPosition().getValue()*Constants.Swerve.RPM_TO_MPS,
-        Rotation2d.fromRotations(steerController.getPosition().getValue()));
+        return new SwerveModuleState(-inputs.driveVelocityRps*Constants.Swerve.WHEEL_CIRCUMFERENCE,
+        Rotation2d.fromRotations(inputs.steerPositionRotations));
+    }
+
+    /**
+     * Fills a state with the measured speed and angle, only allocating a Rotation2d when the module turned
+     * @param state - state to overwrite
+     */
+    public void getState(SwerveModuleState state) {
+        state.speedMetersPerSecond = -inputs.driveVelocityRps * Constants.Swerve.WHEEL_CIRCUMFERENCE;
+        state.angle = rotation(state.angle, getAngleRadians());
+    }
+
+    /** @return measured module angle in radians */
+    public double getAngleRadians() {
+        return Units.rotationsToRadians(inputs.steerPositionRotations);
+    }
+
+    /**
+     * @param last - rotation to reuse, may be null
+     * @param radians - angle wanted
+     * @return last when it already is that angle, otherwise a new Rotation2d, so unchanged angles do not allocate
+     */
+    public static Rotation2d rotation(Rotation2d last, double radians) {
+        return last != null && last.getRadians() == radians ? last : new Rotation2d(radians);
     }
 
     public SwerveModulePosition getPosition() {
         return new SwerveModulePosition(
-            powerController.getPosition().getValue()*Constants.Swerve.MK4I_L1_REV_TO_METERS, getState().angle);
+            -inputs.drivePositionRotations*Constants.Swerve.WHEEL_CIRCUMFERENCE, Rotation2d.fromRotations(inputs.steerPositionRotations));
+    }
+
+    /** @return drive position/velocity and steer position/velocity signals for the odometry thread to wait on */
+    public BaseStatusSignal[] getOdometrySignals() {
+        return new BaseStatusSignal[] {odometryDrivePosition, odometryDriveVelocity, odometrySteerPosition, odometrySteerVelocity};
+    }
+
+    /** @return latency compensated wheel distance in meters from the odometry signals, only call from the odometry thread */
+    public double sampleOdometryDistance() {
+        return -BaseStatusSignal.getLatencyCompensatedValue(odometryDrivePosition, odometryDriveVelocity)
+            * Constants.Swerve.WHEEL_CIRCUMFERENCE;
+    }
+
+    /** @return latency compensated module angle in radians from the odometry signals, only call from the odometry thread */
+    public double sampleOdometryAngle() {
+        return Units.rotationsToRadians(BaseStatusSignal.getLatencyCompensatedValue(odometrySteerPosition, odometrySteerVelocity));
+    }
+
+    /** @return wheel speed in m/s from the odometry signals, only call from the odometry thread */
+    public double sampleOdometryVelocity() {
+        return -odometryDriveVelocity.getValueAsDouble() * Constants.Swerve.WHEEL_CIRCUMFERENCE;
     }
 
     private void addDashboardEntries(ShuffleboardContainer container) {
-        container.addNumber("Encoder Position in Degrees", () -> analogEncoder.getAbsolutePosition().getValueAsDouble() * 360);
-        container.addNumber("Falcon Position in Rotations", () -> steerController.getPosition().getValueAsDouble() * 360 % 360);
-        container.addNumber("Current Velocity", () -> this.getState().speedMetersPerSecond);
+        container.addNumber("Encoder Position in Degrees", () -> inputs.absolutePositionRotations * 360);
+        container.addNumber("Falcon Position in Rotations", () -> inputs.steerPositionRotations * 360 % 360);
+        container.addNumber("Current Velocity", () -> -inputs.driveVelocityRps * Constants.Swerve.WHEEL_CIRCUMFERENCE);
 
     }
 
     public SwerveModuleState optimize (
     
         SwerveModuleState desiredState, Rotation2d currentAngle) {
-      var delta = desiredState.angle.minus(currentAngle);
-      if (Math.abs(delta.getDegrees()) > 90.0) {
-        if (this.name == "BackLeft") {
-            Currangle = currentAngle.getDegrees();
-            desiredd = desiredState.angle.getDegrees();
-            deltaa = delta.getDegrees();
-            optimizedAngle = desiredState.angle.rotateBy(Rotation2d.fromDegrees(180.0)).getDegrees();
-        }
-        return new SwerveModuleState(
-            -desiredState.speedMetersPerSecond,
-            desiredState.angle.rotateBy(Rotation2d.fromDegrees(180.0)));
-      } else {
-        if (this.name == "BackLeft") {
-            NOCurrangle = currentAngle.getDegrees();
-            NOdesiredd = desiredState.angle.getDegrees();
-            NOdeltaa = delta.getDegrees();
-            NOoptimizedAngle = desiredState.angle.getDegrees();
-            
+      optimizeInPlace(desiredState.speedMetersPerSecond, desiredState.angle.getRadians(), currentAngle.getRadians());
+      return new SwerveModuleState(optimizer.getSpeed(), Rotation2d.fromRotations(optimizer.getRotations()));
+    }
+
+    /**
+     * Flips the module instead of turning more than 90 degrees through the optimizer
+     * @param speed - desired speed in m/s
+     * @param desiredRadians - desired module angle
+     * @param currentRadians - current module angle
+     */
+    private void optimizeInPlace(double speed, double desiredRadians, double currentRadians) {
+      optimizer.optimize(speed, desiredRadians, currentRadians);
+      if (this.name == "BackLeft") {
+        double delta = Math.toDegrees(MathUtil.angleModulus(desiredRadians - currentRadians));
+        if (optimizer.isFlipped()) {
+            Currangle = Math.toDegrees(currentRadians);
+            desiredd = Math.toDegrees(desiredRadians);
+            deltaa = delta;
+            optimizedAngle = Units.rotationsToDegrees(optimizer.getRotations());
+        } else {
+            NOCurrangle = Math.toDegrees(currentRadians);
+            NOdesiredd = Math.toDegrees(desiredRadians);
+            NOdeltaa = delta;
+            NOoptimizedAngle = Math.toDegrees(desiredRadians);
         }
-        return new SwerveModuleState(desiredState.speedMetersPerSecond, desiredState.angle);
       }
     }
 
+    /**
+     * @param desiredRadians - desired module angle
+     * @param currentRadians - current module angle
+     * @return whether to steer to the opposite angle and drive backwards, true when desired is more than 90 degrees away
+     */
+    public static boolean shouldFlip(double desiredRadians, double currentRadians) {
+      return ModuleOptimizer.shouldFlip(desiredRadians, currentRadians);
+    }
+
     public void setState(SwerveModuleState state) {
+        setState(state.speedMetersPerSecond, state.angle.getRadians());
+    }
 
-        var optimized = optimize(state, (this.getState().angle));
+    /**
+     * Sets the module without allocating, only sending setpoints that changed
+     * @param speedMetersPerSecond - desired speed
+     * @param angleRadians - desired module angle
+     */
+    public void setState(double speedMetersPerSecond, double angleRadians) {
+        optimizeInPlace(speedMetersPerSecond, angleRadians, getAngleRadians());
 
-        double velocityToSet = optimized.speedMetersPerSecond;
-    
-        steerController.setControl(new PositionVoltage(optimized.angle.getRotations(), 0.0, false, 0.0, 0, false, false, false));
-        
-        powerController.setControl(new VelocityVoltage(-velocityToSet/Constants.Swerve.WHEEL_CIRCUMFERENCE, 0.0, false, 0.0, 0, false, false, false));
-    
+        if (WarmUp.isActive()) return;
+
+        loggedState[0] = speedMetersPerSecond;
+        loggedState[1] = angleRadians;
 
+        if (optimizer.steerChanged()) {
+            steerController.setControl(steerRequest.withPosition(optimizer.getRotations()));
+            optimizer.steerSent();
+        }
+
+        if (optimizer.driveChanged()) {
+            powerController.setControl(driveRequest.withVelocity(optimizer.getDriveVelocity()));
+            optimizer.driveSent();
+        }
+    }
+
+
+    /**
+     * Drives with a raw voltage while holding the module straight, for SysId
+     * @param volts - drive motor voltage
+     */
+    public void setDriveVoltage(double volts) {
+        if (WarmUp.isActive()) return;
+        steerController.setControl(steerRequest.withPosition(0));
+        powerController.setControl(driveVoltageRequest.withOutput(volts));
+        optimizer.invalidate();
+    }
+
+    /**
+     * Steers with a raw voltage with the drive motor stopped, for SysId
+     * @param volts - steer motor voltage
+     */
+    public void setSteerVoltage(double volts) {
+        if (WarmUp.isActive()) return;
+        powerController.stopMotor();
+        steerController.setControl(steerVoltageRequest.withOutput(volts));
+        optimizer.invalidate();
+    }
+
+    /**
+     * @param steer - the steer motor instead of the drive motor
+     * @return new copies of position, velocity, acceleration and motor voltage for the SysId sampler, in wheel or
+     * module rotations
+     */
+    public BaseStatusSignal[] getSysIdSignals(boolean steer) {
+        TalonFX motor = steer ? steerController : powerController;
+        return new BaseStatusSignal[] {
+            motor.getPosition().clone(), motor.getVelocity().clone(), motor.getAcceleration().clone(), motor.getMotorVoltage().clone()
+        };
     }
 
-    
     public void stop() {
         powerController.stopMotor();
         steerController.stopMotor();
+        optimizer.invalidate();
     }
 
+    /** Queues brake mode on both motors after their boot configs, returns without waiting for the apply */
     public void brakeMode() {
+        setNeutralMode(NeutralModeValue.Brake);
+    }
 
-        var powerControllerConfig = powerController.getConfigurator();
-        var steerControllerConfig = powerController.getConfigurator();
-        
-        var brakeModeConfig = new MotorOutputConfigs();
-        brakeModeConfig.NeutralMode = NeutralModeValue.Brake;
+    /** Queues coast mode on both motors after their boot configs, returns without waiting for the apply */
+    public void coastMode() {
+        setNeutralMode(NeutralModeValue.Coast);
+    }
 
-        powerControllerConfig.apply(brakeModeConfig);
-        steerControllerConfig.apply(brakeModeConfig);
-        
+    private void setNeutralMode(NeutralModeValue mode) {
+        // MotorOutput is applied as a whole, so each motor keeps its own inversion
+        var driveOutput = new MotorOutputConfigs().withNeutralMode(mode);
+        var steerOutput = new MotorOutputConfigs().withNeutralMode(mode).withInverted(InvertedValue.Clockwise_Positive);
+
+        DeviceCommandQueue queue = DeviceCommandQueue.getInstance();
+        queue.submit(name + " Drive/Neutral Mode", driveConfigured, () -> powerController.getConfigurator().apply(driveOutput));
+        queue.submit(name + " Steer/Neutral Mode", steerConfigured, () -> steerController.getConfigurator().apply(steerOutput));
     }
 
-    public void coastMode() {
+    /**
+     * Queues a new drive supply current limit after the boot config, returns without waiting for the apply
+     * @param amps - supply current limit
+     */
+    public void setDriveCurrentLimit(double amps) {
+        var limits = driveLimits(amps);
+        DeviceCommandQueue.getInstance().submit(name + " Drive/Current Limits", driveConfigured,
+            () -> powerController.getConfigurator().apply(limits));
+    }
 
-        var powerControllerConfig = powerController.getConfigurator();
-        var steerControllerConfig = powerController.getConfigurator();
-        
-        var coastModeConfig = new MotorOutputConfigs();
-        coastModeConfig.NeutralMode = NeutralModeValue.Coast;
+    /** @return fixed stator limit with the given supply limit, the supply limit is set by the PowerManager */
+    private static CurrentLimitsConfigs driveLimits(double supplyAmps) {
+        return new CurrentLimitsConfigs()
+            .withStatorCurrentLimitEnable(true)
+            .withStatorCurrentLimit(Constants.Swerve.DRIVE_STATOR_LIMIT)
+            .withSupplyCurrentLimitEnable(true)
+            .withSupplyCurrentLimit(supplyAmps);
+    }
 
-        powerControllerConfig.apply(coastModeConfig);
-        steerControllerConfig.apply(coastModeConfig);
-        
+    /** @return last state passed to setState, before optimizing */
+    public SwerveModuleState getDesiredState() {
+        return new SwerveModuleState(loggedState[0], new Rotation2d(loggedState[1]));
     }
 
-    public SwerveModuleState[] getStates() {
-        SwerveModuleState[] arr = new SwerveModuleState[4];
-        if (this.name == "FrontLeft") {
-            arr[0] = this.getState();
-        }
-        if (this.name == "FrontRight") {
-            arr[1] = this.getState();
-        }
-        if (this.name == "BackLeft") {
-            arr[2] = this.getState();
-        }
-        if (this.name == "BackRight") {
-            arr[3] = this.getState();
-        }
-        return arr;
+    /**
+     * Fills a state with the last state passed to setState, only allocating a Rotation2d when the angle changed
+     * @param state - state to overwrite
+     */
+    public void getDesiredState(SwerveModuleState state) {
+        state.speedMetersPerSecond = loggedState[0];
+        state.angle = rotation(state.angle, loggedState[1]);
     }
    
+    /**
+     * Advances the module physics from the voltages the simulated motors are applying
+     * @param dt - seconds since the last call
+     */
+    public void simulationPeriodic(double dt) {
+        TalonFXSimState driveState = powerController.getSimState();
+        TalonFXSimState steerState = steerController.getSimState();
+        CANcoderSimState encoderState = analogEncoder.getSimState();
+
+        double batteryVoltage = RobotController.getBatteryVoltage();
+        driveState.setSupplyVoltage(batteryVoltage);
+        steerState.setSupplyVoltage(batteryVoltage);
+        encoderState.setSupplyVoltage(batteryVoltage);
+
+        driveSim.setInputVoltage(driveState.getMotorVoltage());
+        steerSim.setInputVoltage(steerState.getMotorVoltage());
+        driveSim.update(dt);
+        steerSim.update(dt);
+
+        // the sims track the wheel/module, the talons expect rotor units and the steer reads the CANcoder directly
+        driveState.setRawRotorPosition(driveSim.getAngularPositionRotations() * Constants.Swerve.DRIVE_GEAR_RATIO);
+        driveState.setRotorVelocity(driveSim.getAngularVelocityRPM() / 60 * Constants.Swerve.DRIVE_GEAR_RATIO);
+        steerState.setRawRotorPosition(steerSim.getAngularPositionRotations() * Constants.Swerve.STEER_GEAR_RATIO);
+        steerState.setRotorVelocity(steerSim.getAngularVelocityRPM() / 60 * Constants.Swerve.STEER_GEAR_RATIO);
+        encoderState.setRawPosition(steerSim.getAngularPositionRotations());
+        encoderState.setVelocity(steerSim.getAngularVelocityRPM() / 60);
+    }
+
     public void periodic() {
-        publisher.set(getStates());
+        updateInputs();
+
+        loggedState[2] = -inputs.driveVelocityRps * Constants.Swerve.WHEEL_CIRCUMFERENCE;
+        loggedState[3] = Units.rotationsToRadians(inputs.steerPositionRotations);
+        stateChannel.append(loggedState);
 
     }
     
@@ -0,0 +1,20 @@
+package frc.robot.modules;
+
+/**
+ * Sensor snapshot of one {@link SwerveModule}, refreshed once per loop so every reader in that loop sees the
+ * same values without going back to the CAN bus.
+ */
+public class SwerveModuleInputs {
+    /** drive motor position in wheel rotations */
+    public double drivePositionRotations;
+    /** drive motor velocity in wheel rotations per second */
+    public double driveVelocityRps;
+    /** steer position in module rotations, from the remote CANcoder */
+    public double steerPositionRotations;
+    /** steer velocity in module rotations per second */
+    public double steerVelocityRps;
+    /** CANcoder absolute position in rotations */
+    public double absolutePositionRotations;
+    /** FPGA time the snapshot was taken, in seconds */
+    public double timestamp;
+}
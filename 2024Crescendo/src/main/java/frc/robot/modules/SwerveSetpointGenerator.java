@@ -0,0 +1,205 @@
+package frc.robot.modules;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Turns requested chassis speeds into the closest module setpoints the modules can actually reach this loop.
+ * <p> The request is first discretized over the loop period, so translating while rotating follows the arc the robot
+ * will really drive instead of skewing. The generator then moves from the last setpoint towards the request by the
+ * largest fraction s of the way where no module has to steer faster than the steer limit and no module speed changes
+ * faster than the drive acceleration limit. Steering is compared modulo 180 degrees because the modules flip instead
+ * of turning around, so a flip counts as driving the other way and a reversal still slows through zero.
+ * <p> Allocation free and without hardware, so it runs every loop and in {@link frc.robot.util.WarmUp}.
+ */
+public class SwerveSetpointGenerator {
+    private static final int BISECTION_STEPS = 10;
+    private static final double STOPPED_SPEED = 1e-3; //m/s
+
+    private final double[] moduleX, moduleY;
+    private final double maxSpeed, maxSteerVelocity, maxAcceleration;
+
+    // last setpoint, robot relative
+    private double vx = 0, vy = 0, omega = 0;
+    private final double[] lastAngles;
+    private final double[] accelerationScales;
+
+    // request for this loop, robot relative and discretized
+    private double desiredVx, desiredVy, desiredOmega;
+
+    /** module speeds in m/s from the last {@link #calculate} */
+    public final double[] speeds;
+    /** module angles in radians from the last {@link #calculate} */
+    public final double[] angles;
+
+    /**
+     * Creates a new SwerveSetpointGenerator
+     * @param maxSpeed - fastest any module may go in m/s
+     * @param maxSteerVelocity - fastest a module can steer in rad/s
+     * @param maxAcceleration - fastest a module speed can change in m/s^2
+     * @param locations - module locations relative to the robot center, in kinematics order
+     */
+    public SwerveSetpointGenerator(double maxSpeed, double maxSteerVelocity, double maxAcceleration, Translation2d... locations) {
+        this.maxSpeed = maxSpeed;
+        this.maxSteerVelocity = maxSteerVelocity;
+        this.maxAcceleration = maxAcceleration;
+
+        moduleX = new double[locations.length];
+        moduleY = new double[locations.length];
+        lastAngles = new double[locations.length];
+        accelerationScales = new double[locations.length];
+        speeds = new double[locations.length];
+        angles = new double[locations.length];
+
+        for (int i = 0; i < locations.length; i++) {
+            moduleX[i] = locations[i].getX();
+            moduleY[i] = locations[i].getY();
+            accelerationScales[i] = 1;
+        }
+    }
+
+    /**
+     * Limits one module to part of the drive acceleration, e.g. while it is slipping. The whole robot slows its
+     * acceleration with it so the modules stay in step
+     * @param module - module index in kinematics order
+     * @param scale - fraction of maxAcceleration, 1 for all of it
+     */
+    public void setAccelerationScale(int module, double scale) {
+        accelerationScales[module] = scale;
+    }
+
+    /**
+     * Starts over from a stopped robot with the modules where they are, e.g. after the modules were driven directly
+     * @param measuredAngles - module angles in radians, in kinematics order
+     */
+    public void reset(double[] measuredAngles) {
+        vx = vy = omega = 0;
+        for (int i = 0; i < lastAngles.length; i++) {
+            lastAngles[i] = measuredAngles[i];
+            angles[i] = measuredAngles[i];
+            speeds[i] = 0;
+        }
+    }
+
+    /**
+     * Computes this loop's module speeds and angles
+     * @param vx - requested forward speed in m/s
+     * @param vy - requested left speed in m/s
+     * @param omega - requested counterclockwise rotation speed in rad/s
+     * @param headingRadians - robot heading, used when fieldRelative
+     * @param fieldRelative - whether vx and vy are relative to the field
+     * @param dt - loop period in seconds
+     */
+    public void calculate(double vx, double vy, double omega, double headingRadians, boolean fieldRelative, double dt) {
+        if (fieldRelative) {
+            double cos = Math.cos(headingRadians), sin = Math.sin(headingRadians);
+            double robotVx = vx * cos + vy * sin;
+            vy = -vx * sin + vy * cos;
+            vx = robotVx;
+        }
+        discretize(vx, vy, omega, dt);
+        desaturate();
+
+        double s = 1;
+        for (int i = 0; i < moduleX.length && s > 0; i++) {
+            s = Math.min(s, steerLimitedFraction(i, s, dt));
+            s = Math.min(s, accelerationLimitedFraction(i, s, dt));
+        }
+
+        this.vx += (desiredVx - this.vx) * s;
+        this.vy += (desiredVy - this.vy) * s;
+        this.omega += (desiredOmega - this.omega) * s;
+
+        for (int i = 0; i < moduleX.length; i++) {
+            double moduleVx = moduleVx(i, this.vx, this.omega), moduleVy = moduleVy(i, this.vy, this.omega);
+            speeds[i] = Math.hypot(moduleVx, moduleVy);
+            // hold the last angle when stopped, same as SwerveDriveKinematics
+            if (speeds[i] > STOPPED_SPEED) lastAngles[i] = Math.atan2(moduleVy, moduleVx);
+            angles[i] = lastAngles[i];
+        }
+    }
+
+    /** Finds the twist that ends where driving the request for dt would, so rotating does not skew the translation */
+    private void discretize(double vx, double vy, double omega, double dt) {
+        double dTheta = omega * dt, halfTheta = dTheta / 2;
+        double cosMinusOne = Math.cos(dTheta) - 1;
+        double halfThetaByTanHalfTheta = Math.abs(cosMinusOne) < 1e-9
+            ? 1 - dTheta * dTheta / 12
+            : -(halfTheta * Math.sin(dTheta)) / cosMinusOne;
+
+        // rotate the translation by -halfTheta and scale it, the log map of the pose change
+        desiredVx = vx * halfThetaByTanHalfTheta + vy * halfTheta;
+        desiredVy = vy * halfThetaByTanHalfTheta - vx * halfTheta;
+        desiredOmega = omega;
+    }
+
+    /** Scales the request down together if any module would be over maxSpeed */
+    private void desaturate() {
+        double fastest = 0;
+        for (int i = 0; i < moduleX.length; i++) {
+            fastest = Math.max(fastest, Math.hypot(moduleVx(i, desiredVx, desiredOmega), moduleVy(i, desiredVy, desiredOmega)));
+        }
+        if (fastest > maxSpeed) {
+            double scale = maxSpeed / fastest;
+            desiredVx *= scale;
+            desiredVy *= scale;
+            desiredOmega *= scale;
+        }
+    }
+
+    /** @return largest fraction up to limit where module i steers no more than it can in dt */
+    private double steerLimitedFraction(int i, double limit, double dt) {
+        if (Math.hypot(moduleVx(i, vx, omega), moduleVy(i, vy, omega)) < STOPPED_SPEED) return limit; // free to turn in place
+        if (steerChange(i, limit) <= maxSteerVelocity * dt) return limit;
+
+        double feasible = 0, infeasible = limit;
+        for (int step = 0; step < BISECTION_STEPS; step++) {
+            double s = (feasible + infeasible) / 2;
+            if (steerChange(i, s) <= maxSteerVelocity * dt) feasible = s;
+            else infeasible = s;
+        }
+        return feasible;
+    }
+
+    /** @return largest fraction up to limit where module i changes speed no more than it can in dt */
+    private double accelerationLimitedFraction(int i, double limit, double dt) {
+        double lastSpeed = Math.hypot(moduleVx(i, vx, omega), moduleVy(i, vy, omega));
+        double maxChange = maxAcceleration * accelerationScales[i] * dt;
+        if (Math.abs(signedSpeedAt(i, limit) - lastSpeed) <= maxChange) return limit;
+
+        double feasible = 0, infeasible = limit;
+        for (int step = 0; step < BISECTION_STEPS; step++) {
+            double s = (feasible + infeasible) / 2;
+            if (Math.abs(signedSpeedAt(i, s) - lastSpeed) <= maxChange) feasible = s;
+            else infeasible = s;
+        }
+        return feasible;
+    }
+
+    /** @return radians module i turns going a fraction s of the way to the request, flips are free */
+    private double steerChange(int i, double s) {
+        double chassisVx = vx + (desiredVx - vx) * s, chassisVy = vy + (desiredVy - vy) * s;
+        double chassisOmega = omega + (desiredOmega - omega) * s;
+        double moduleVx = moduleVx(i, chassisVx, chassisOmega), moduleVy = moduleVy(i, chassisVy, chassisOmega);
+        if (Math.hypot(moduleVx, moduleVy) < STOPPED_SPEED) return 0;
+
+        double change = Math.abs(MathUtil.angleModulus(Math.atan2(moduleVy, moduleVx) - lastAngles[i]));
+        return Math.min(change, Math.PI - change);
+    }
+
+    /** @return module i speed going a fraction s of the way to the request, negative when the module would flip */
+    private double signedSpeedAt(int i, double s) {
+        double chassisOmega = omega + (desiredOmega - omega) * s;
+        double moduleVx = moduleVx(i, vx + (desiredVx - vx) * s, chassisOmega), moduleVy = moduleVy(i, vy + (desiredVy - vy) * s, chassisOmega);
+        double speed = Math.hypot(moduleVx, moduleVy);
+        return Math.cos(Math.atan2(moduleVy, moduleVx) - lastAngles[i]) < 0 ? -speed : speed;
+    }
+
+    private double moduleVx(int i, double chassisVx, double chassisOmega) {
+        return chassisVx - chassisOmega * moduleY[i];
+    }
+
+    private double moduleVy(int i, double chassisVy, double chassisOmega) {
+        return chassisVy + chassisOmega * moduleX[i];
+    }
+}
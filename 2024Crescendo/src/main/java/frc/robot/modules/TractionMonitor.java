@@ -0,0 +1,197 @@
+package frc.robot.modules;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+import frc.robot.Constants;
+
+/**
+ * Detects wheel slip in odometry samples and keeps slipping wheels out of odometry.
+ * <p> The gyro rate gives the rotation rate, so every module's measured velocity implies a robot translation on its own. A
+ * module whose implied translation disagrees with the average of the other modules by more than
+ * {@link Constants.Swerve#SLIP_VELOCITY_ERROR} plus {@link Constants.Swerve#SLIP_RATIO} of the speed is slipping, worst
+ * first, until the remaining modules agree. At most two modules are flagged so there are always two to compare. A
+ * slipping module's distance in the sample is replaced with what the good modules say it should have rolled, and its acceleration scale
+ * drops so the setpoint generator stops asking it for more than the carpet gives. A single sample never corrects a
+ * module by more than it could roll at {@link Constants.Swerve#DRIVE_FREE_SPEED} against the robot doing the same, so a
+ * glitch cannot leave a large offset in odometry.
+ * <p> When every module slips the same way, e.g. pushed sideways or all spinning on a hard launch, the modules still
+ * agree with each other and nothing is flagged.
+ * <p> Allocation free, samples are corrected in place while draining the {@link OdometryThread}.
+ */
+public class TractionMonitor {
+    private final double[] moduleX, moduleY;
+
+    // robot translation each module implies this sample, robot relative
+    private final double[] impliedVx, impliedVy;
+    private final boolean[] slipping, slippedThisLoop;
+    private final double[] lastMeasuredDistances, distanceCorrections;
+    private final double[] accelerationScales;
+
+    private double lastTimestamp = Double.NaN;
+    private int rejectedSamples = 0;
+
+    /**
+     * Creates a new TractionMonitor
+     * @param locations - module locations relative to the robot center, in kinematics order
+     */
+    public TractionMonitor(Translation2d... locations) {
+        moduleX = new double[locations.length];
+        moduleY = new double[locations.length];
+        impliedVx = new double[locations.length];
+        impliedVy = new double[locations.length];
+        slipping = new boolean[locations.length];
+        slippedThisLoop = new boolean[locations.length];
+        lastMeasuredDistances = new double[locations.length];
+        distanceCorrections = new double[locations.length];
+        accelerationScales = new double[locations.length];
+
+        for (int i = 0; i < locations.length; i++) {
+            moduleX[i] = locations[i].getX();
+            moduleY[i] = locations[i].getY();
+            accelerationScales[i] = 1;
+        }
+    }
+
+    /**
+     * Checks a sample for slip and rewrites the distances of slipping modules, call for every sample in order
+     * @param sample - drained sample, its module distances are corrected in place
+     */
+    public void correct(OdometryThread.Sample sample) {
+        double dt = sample.timestamp - lastTimestamp;
+        boolean first = Double.isNaN(lastTimestamp);
+        lastTimestamp = sample.timestamp;
+
+        if (first || dt <= 0) {
+            for (int i = 0; i < moduleX.length; i++) {
+                lastMeasuredDistances[i] = sample.distances[i];
+                sample.distances[i] += distanceCorrections[i];
+            }
+            return;
+        }
+
+        double omega = sample.yawRate;
+        // longer gaps than the odometry thread's wait timeout are not trusted for more than the timeout
+        double maxCorrection = 2 * Constants.Swerve.DRIVE_FREE_SPEED * Math.min(dt, 2.0 / Constants.Swerve.ODOMETRY_FREQUENCY);
+
+        for (int i = 0; i < moduleX.length; i++) {
+            double angle = sample.angles[i];
+            double moduleVx = sample.velocities[i] * Math.cos(angle), moduleVy = sample.velocities[i] * Math.sin(angle);
+            impliedVx[i] = moduleVx + omega * moduleY[i];
+            impliedVy[i] = moduleVy - omega * moduleX[i];
+        }
+
+        // drop the module that disagrees most with the others until the rest agree, keeping at least two to compare
+        double sumVx = 0, sumVy = 0;
+        int good = moduleX.length;
+        for (int i = 0; i < moduleX.length; i++) {
+            slipping[i] = false;
+            sumVx += impliedVx[i];
+            sumVy += impliedVy[i];
+        }
+        while (good > 2) {
+            int worst = -1;
+            double worstExcess = 0;
+            for (int i = 0; i < moduleX.length; i++) {
+                if (slipping[i]) continue;
+                double othersVx = (sumVx - impliedVx[i]) / (good - 1), othersVy = (sumVy - impliedVy[i]) / (good - 1);
+                double excess = Math.hypot(impliedVx[i] - othersVx, impliedVy[i] - othersVy)
+                    - Constants.Swerve.SLIP_VELOCITY_ERROR - Constants.Swerve.SLIP_RATIO * Math.hypot(othersVx, othersVy);
+                if (excess > worstExcess) {
+                    worst = i;
+                    worstExcess = excess;
+                }
+            }
+            if (worst < 0) break;
+
+            slipping[worst] = true;
+            slippedThisLoop[worst] = true;
+            sumVx -= impliedVx[worst];
+            sumVy -= impliedVy[worst];
+            good--;
+        }
+        double robotVx = sumVx / good, robotVy = sumVy / good;
+
+        boolean rejected = false;
+        for (int i = 0; i < moduleX.length; i++) {
+            double measured = sample.distances[i];
+            if (slipping[i]) {
+                // roll the module as far as the robot moved along the way it is pointing
+                double angle = sample.angles[i];
+                double expectedSpeed = (robotVx - omega * moduleY[i]) * Math.cos(angle) + (robotVy + omega * moduleX[i]) * Math.sin(angle);
+                distanceCorrections[i] += MathUtil.clamp(expectedSpeed * dt - (measured - lastMeasuredDistances[i]), -maxCorrection, maxCorrection);
+                rejected = true;
+            }
+            lastMeasuredDistances[i] = measured;
+            sample.distances[i] = measured + distanceCorrections[i];
+        }
+        if (rejected) rejectedSamples++;
+    }
+
+    /**
+     * Starts over at the next sample, e.g. after the gyro was reset. Corrections already made are kept
+     */
+    public void reset() {
+        lastTimestamp = Double.NaN;
+        for (int i = 0; i < moduleX.length; i++) {
+            slipping[i] = false;
+        }
+    }
+
+    /**
+     * Starts over and drops every correction, for odometry resets
+     * @param positions - latest corrected module positions, the corrections are taken back out of them in place
+     */
+    public void reset(SwerveModulePosition[] positions) {
+        reset();
+        for (int i = 0; i < moduleX.length; i++) {
+            positions[i].distanceMeters -= distanceCorrections[i];
+            distanceCorrections[i] = 0;
+        }
+    }
+
+    /**
+     * Lowers the acceleration scale of modules that slipped since the last call and recovers the rest, call once per loop
+     * @param dt - seconds since the last call
+     */
+    public void periodic(double dt) {
+        double recovery = (1 - Constants.Swerve.SLIP_ACCELERATION_SCALE) * dt / Constants.Swerve.SLIP_RECOVERY_TIME;
+        for (int i = 0; i < moduleX.length; i++) {
+            accelerationScales[i] = slippedThisLoop[i]
+                ? Constants.Swerve.SLIP_ACCELERATION_SCALE
+                : Math.min(1, accelerationScales[i] + recovery);
+            slippedThisLoop[i] = false;
+        }
+    }
+
+    /**
+     * @param module - module index in kinematics order
+     * @return whether the module slipped in the latest sample
+     */
+    public boolean isSlipping(int module) {
+        return slipping[module];
+    }
+
+    /**
+     * @param module - module index in kinematics order
+     * @return fraction of the full drive acceleration the module should be asked for
+     */
+    public double getAccelerationScale(int module) {
+        return accelerationScales[module];
+    }
+
+    /** @return number of samples where at least one module was replaced */
+    public int getRejectedSamples() {
+        return rejectedSamples;
+    }
+
+    /** @return number of modules slipping in the latest sample */
+    public int getSlippingCount() {
+        int count = 0;
+        for (boolean slip : slipping) {
+            if (slip) count++;
+        }
+        return count;
+    }
+}
@@ -5,25 +5,75 @@
 
 package frc.robot.subsystems;
 
+import static edu.wpi.first.units.Units.Rotations;
+
 import frc.robot.Constants;
+import frc.robot.util.CanBusMonitor;
+import frc.robot.util.DeviceCommandQueue;
+import frc.robot.util.DeviceConfigurator;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PowerManager;
+import frc.robot.util.SysIdMechanism;
+import frc.robot.util.TelemetryLogger;
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
 import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DIOSim;
+import edu.wpi.first.wpilibj.simulation.ElevatorSim;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.CurrentLimitsConfigs;
 import com.ctre.phoenix6.configs.TalonFXConfiguration;
 import com.ctre.phoenix6.controls.MotionMagicVoltage;
+import com.ctre.phoenix6.controls.VoltageOut;
 import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
+import com.ctre.phoenix6.sim.ChassisReference;
+import com.ctre.phoenix6.sim.TalonFXSimState;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.function.DoubleSupplier;
 
 public class Climb extends SubsystemBase {
   private TalonFX motor;
   private TalonFXConfiguration config;
+  private final CompletableFuture<Boolean> configured;
   private MotionMagicVoltage request;
   private boolean isRight;
   private DigitalInput sensor;
+  private final LoopProfiler.Section profilerSection;
+  private final TelemetryLogger.Channel setpointChannel;
+  private final SysIdMechanism sysId;
+  private ElevatorSim elevatorSim;
+  private DIOSim sensorSim;
+
+  /** What ends {@link #lowerUntilLatch} */
+  public enum LatchSource {
+    /** the latch limit sensor, through an interrupt */
+    SENSOR,
+    /** a filtered stator current spike with the rotor stalled */
+    CURRENT
+  }
+
+  // latch detection runs off the main loop, from the sensor interrupt and the current notifier
+  private final AsynchronousInterrupt sensorInterrupt;
+  private final Notifier spikeNotifier;
+  private final StatusSignal<Double> statorCurrent, rotorVelocity;
+  private final LinearFilter currentFilter = LinearFilter.singlePoleIIR(
+    Constants.Climb.SPIKE_FILTER_TIME, Constants.Climb.LATCH_PERIOD);
+  private volatile LatchSource armedSource = null;
+  private volatile boolean latched = false;
+  private double armedTime = 0;
   
   /**
    * Creates new Climb
@@ -32,18 +82,20 @@ public class Climb extends SubsystemBase {
    */
   public Climb(int motorID) {
     motor = new TalonFX(motorID);
+    profilerSection = LoopProfiler.getInstance().section("Climb " + motorID);
+    setpointChannel = TelemetryLogger.getInstance().channel("Climb " + motorID + "/Setpoint", 1);
     config = new TalonFXConfiguration();
     request = new MotionMagicVoltage(0, false, 0.0, 0, false, false, false);
     
     isRight = (motorID == Constants.Climb.RIGHT_MOTOR_ID);
     if(isRight) {
-      motor.setInverted(true);
+      config.MotorOutput.Inverted = InvertedValue.Clockwise_Positive;
       sensor = new DigitalInput(Constants.Climb.RIGHT_DIGITAL_INPUT_ID);
     } else {
       sensor = new DigitalInput(Constants.Climb.LEFT_DIGITAL_INPUT_ID);
     }
 
-    motor.setNeutralMode(NeutralModeValue.Brake);
+    config.MotorOutput.NeutralMode = NeutralModeValue.Brake;
 
     config.Slot0.kP = Constants.Climb.UP_kP;
     config.Slot0.kI = Constants.Climb.UP_kI;
@@ -58,11 +110,70 @@ public class Climb extends SubsystemBase {
     config.MotionMagic.MotionMagicCruiseVelocity = Constants.Climb.CRUISE_VELOCITY;
     config.MotionMagic.MotionMagicAcceleration = Constants.Climb.ACCELERATION;
     
-    config.withCurrentLimits(new CurrentLimitsConfigs().withSupplyCurrentLimit(Constants.Climb.CURRENT_LIMIT));
+    config.withCurrentLimits(new CurrentLimitsConfigs()
+      .withSupplyCurrentLimitEnable(true)
+      .withSupplyCurrentLimit(Constants.Climb.CURRENT_LIMIT));
     
-    motor.getConfigurator().apply(config);
+    configured = DeviceConfigurator.getInstance().configure("Climb " + motorID, motor, config);
+
+    statorCurrent = motor.getStatorCurrent();
+    rotorVelocity = motor.getRotorVelocity();
+    // the latch notifier needs these from the first climb, not only once the deferred signal plan has run
+    BaseStatusSignal.setUpdateFrequencyForAll(Constants.Climb.SIGNAL_FREQUENCY, statorCurrent, rotorVelocity);
+
+    // sensor reads false when triggered, so the latch is a falling edge
+    sensorInterrupt = new AsynchronousInterrupt(sensor, (rising, falling) -> {
+      if (armedSource == LatchSource.SENSOR) latch();
+    });
+    sensorInterrupt.setInterruptEdges(false, true);
+    sensorInterrupt.enable();
+    spikeNotifier = new Notifier(this::checkSpike);
+    spikeNotifier.setName("Climb " + motorID);
+
+    CanBusMonitor.getInstance().addSignalPlan(() -> {
+      motor.getRotorPosition().setUpdateFrequency(Constants.Can.SLOW_FREQUENCY);
+      motor.optimizeBusUtilization();
+    });
+    VoltageOut voltageRequest = new VoltageOut(0);
+    var position = motor.getPosition().clone();
+    var velocity = motor.getVelocity().clone();
+    var acceleration = motor.getAcceleration().clone();
+    var voltage = motor.getMotorVoltage().clone();
+    sysId = new SysIdMechanism("Climb " + motorID, this, Rotations, volts -> motor.setControl(voltageRequest.withOutput(volts)),
+      voltage::getValueAsDouble, position::getValueAsDouble, velocity::getValueAsDouble,
+      Constants.SysId.CLIMB_RAMP, Constants.SysId.CLIMB_STEP, Constants.SysId.CLIMB_TIMEOUT)
+      .withSignals(position, velocity, acceleration, voltage)
+      .withAcceleration(acceleration::getValueAsDouble)
+      .withGravity(SysIdMechanism.Gravity.CONSTANT, null)
+      .withLimits(Constants.Climb.SAFE_ROTATIONS, Constants.Climb.TOP_ROTATIONS)
+      .withRelease(this::stop);
+
+    PowerManager.getInstance().register("Climb " + motorID, 1, Constants.Power.CLIMB_MIN, Constants.Power.CLIMB_MAX,
+      Constants.Power.CLIMB_PRIORITY, this::setCurrentLimit);
+
+    if (RobotBase.isSimulation()) {
+      elevatorSim = new ElevatorSim(DCMotor.getFalcon500(1), Constants.Climb.SIM_GEARING, Constants.Climb.SIM_CARRIAGE_MASS,
+        Constants.Climb.SIM_DRUM_RADIUS, Constants.Climb.SIM_MIN_HEIGHT, Constants.Climb.SIM_MAX_HEIGHT, false, 0);
+      sensorSim = new DIOSim(sensor);
+      if(isRight) motor.getSimState().Orientation = ChassisReference.Clockwise_Positive;
+    }
   }
   
+  /**
+   * Queues a new supply current limit after the boot config, returns without waiting for the apply
+   * @param amps - supply current limit
+   */
+  public void setCurrentLimit(double amps) {
+    var limits = new CurrentLimitsConfigs().withSupplyCurrentLimitEnable(true).withSupplyCurrentLimit(amps);
+    DeviceCommandQueue.getInstance().submit("Climb " + motor.getDeviceID() + "/Current Limits", configured,
+      () -> motor.getConfigurator().apply(limits));
+  }
+
+  /** @return SysId tests for the winch, unloaded, gains in volts per motor rotation like Slot0 and Slot1 */
+  public SysIdMechanism getSysId() {
+    return sysId;
+  }
+
   /** Sets zero position of encoder to just above the latch position of the telescoping arm */
   public void setEncoderOffset() {
     motor.setPosition(0);
@@ -74,6 +185,7 @@ public class Climb extends SubsystemBase {
    * @param holdingRobot - whether holding robot weight, used to configure PID accordingly
    */
   public void moveTo(double pos, boolean holdingRobot) {
+    setpointChannel.append(pos);
     if(holdingRobot) motor.setControl(request.withPosition(pos).withSlot(1));
     else motor.setControl(request.withPosition(pos).withSlot(0));
   }
@@ -95,8 +207,54 @@ public class Climb extends SubsystemBase {
     motor.set(speed * Constants.Climb.WIND_FACTOR);
   }
 
-  /** Stops climb motor */
-  public void stop() {
+  /**
+   * Lowers at {@link Constants.Climb#AUTOMATIC_LOWER_SPEED} and stops the motor as soon as the latch is detected,
+   * without waiting for the next robot loop
+   * @param source - what detects the latch
+   */
+  public synchronized void lowerUntilLatch(LatchSource source) {
+    latched = false;
+    if (source == LatchSource.SENSOR && !sensor.get()) {
+      latch();
+      return;
+    }
+
+    currentFilter.reset();
+    armedTime = Timer.getFPGATimestamp();
+    armedSource = source;
+    if (source == LatchSource.CURRENT) spikeNotifier.startPeriodic(Constants.Climb.LATCH_PERIOD);
+    lowerAt(Constants.Climb.AUTOMATIC_LOWER_SPEED);
+  }
+
+  /** @return whether the last {@link #lowerUntilLatch} has latched and stopped */
+  public boolean isLatched() {
+    return latched;
+  }
+
+  /** Stops the motor from the interrupt or notifier thread once latched */
+  private synchronized void latch() {
+    if (latched) return;
+    armedSource = null;
+    motor.stopMotor();
+    latched = true;
+  }
+
+  /** Runs on the notifier thread, synchronized so {@link #lowerUntilLatch} cannot reset the filter mid update */
+  private synchronized void checkSpike() {
+    BaseStatusSignal.refreshAll(statorCurrent, rotorVelocity);
+    double current = currentFilter.calculate(statorCurrent.getValueAsDouble());
+    if (armedSource != LatchSource.CURRENT || Timer.getFPGATimestamp() - armedTime < Constants.Climb.SPIKE_BLANKING) return;
+
+    if (current >= Constants.Climb.SPIKE_STATOR_CURRENT && Math.abs(rotorVelocity.getValueAsDouble()) < Constants.Climb.STALL_VELOCITY) {
+      latch();
+      spikeNotifier.stop();
+    }
+  }
+
+  /** Stops climb motor and any latch detection */
+  public synchronized void stop() {
+    armedSource = null;
+    spikeNotifier.stop();
     motor.stopMotor();
   }
 
@@ -113,12 +271,34 @@ public class Climb extends SubsystemBase {
     if(isRight){
       tab.addDouble("Right Climb Rel Encoder", () -> motor.getRotorPosition().getValueAsDouble());
       tab.addBoolean("Right Climb Sensor", () -> getSensorValue());
+      tab.addBoolean("Right Climb Latched", () -> isLatched());
     } else {
       tab.addDouble("Left Climb Rel Encoder", () -> motor.getRotorPosition().getValueAsDouble());
       tab.addBoolean("Left Climb Sensor", () -> getSensorValue());
+      tab.addBoolean("Left Climb Latched", () -> isLatched());
     }      
   }
   
   @Override
-  public void periodic() {}
+  public void periodic() {
+    profilerSection.mark();
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    TalonFXSimState simState = motor.getSimState();
+    simState.setSupplyVoltage(RobotController.getBatteryVoltage());
+
+    elevatorSim.setInputVoltage(simState.getMotorVoltage());
+    elevatorSim.update(TimedRobot.kDefaultPeriod);
+
+    // carriage meters to rotor rotations through the drum and gearing
+    double rotationsPerMeter = Constants.Climb.SIM_GEARING / (2 * Math.PI * Constants.Climb.SIM_DRUM_RADIUS);
+    double rotorPosition = elevatorSim.getPositionMeters() * rotationsPerMeter;
+    simState.setRawRotorPosition(rotorPosition);
+    simState.setRotorVelocity(elevatorSim.getVelocityMetersPerSecond() * rotationsPerMeter);
+
+    // sensor reads false when the latch is triggered
+    sensorSim.setValue(rotorPosition < Constants.Climb.LATCH_ROTATIONS);
+  }
 }
\ No newline at end of file
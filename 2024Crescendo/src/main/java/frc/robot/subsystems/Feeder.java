@@ -10,14 +10,41 @@ import com.revrobotics.CANSparkMax;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
 import frc.robot.Constants;
+import frc.robot.util.CanBusMonitor;
+import frc.robot.util.DeviceCommandQueue;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PowerManager;
 
 public class Feeder extends SubsystemBase {
   private CANSparkMax leftMotor, rightMotor;
+  private final LoopProfiler.Section profilerSection = LoopProfiler.getInstance().section("Feeder");
 
   /** Creates new Feeder */
   public Feeder() {
     leftMotor = new CANSparkMax (Constants.Feeder.LEFT_ID, MotorType.kBrushless); 
     rightMotor = new CANSparkMax(Constants.Feeder.RIGHT_ID, MotorType.kBrushless);
+    setCurrentLimit(Constants.Power.FEEDER_MIN);
+
+    // open loop, nothing reads them back
+    CanBusMonitor.getInstance().addSignalPlan(() -> {
+      CanBusMonitor.setSparkFramePeriods(leftMotor,
+        Constants.Can.SPARK_SLOW_PERIOD, Constants.Can.SPARK_IDLE_PERIOD, Constants.Can.SPARK_IDLE_PERIOD);
+      CanBusMonitor.setSparkFramePeriods(rightMotor,
+        Constants.Can.SPARK_SLOW_PERIOD, Constants.Can.SPARK_IDLE_PERIOD, Constants.Can.SPARK_IDLE_PERIOD);
+    });
+    PowerManager.getInstance().register("Feeder", 2, Constants.Power.FEEDER_MIN, Constants.Power.FEEDER_MAX,
+      Constants.Power.FEEDER_PRIORITY, this::setCurrentLimit);
+  }
+
+  /**
+   * Queues both motors' smart current limit, returns without waiting for the Spark MAXes
+   * @param amps - current limit per motor
+   */
+  public void setCurrentLimit(double amps) {
+    DeviceCommandQueue.getInstance().submit("Feeder/Current Limit", () -> {
+      leftMotor.setSmartCurrentLimit((int) amps);
+      rightMotor.setSmartCurrentLimit((int) amps);
+    });
   }
   
   /**
@@ -37,5 +64,7 @@ public class Feeder extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {}
+  public void periodic() {
+    profilerSection.mark();
+  }
 }
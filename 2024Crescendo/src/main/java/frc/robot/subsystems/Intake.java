@@ -9,14 +9,34 @@ import com.revrobotics.CANSparkLowLevel.MotorType;
 
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.util.CanBusMonitor;
+import frc.robot.util.DeviceCommandQueue;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PowerManager;
 
 public class Intake extends SubsystemBase {
   private CANSparkMax motor;
+  private final LoopProfiler.Section profilerSection = LoopProfiler.getInstance().section("Intake");
 
   /** Creates new Intake */
   public Intake() {
     motor = new CANSparkMax(Constants.Intake.MOTOR_ID, MotorType.kBrushless);
     motor.restoreFactoryDefaults();
+    motor.setSmartCurrentLimit((int) Constants.Power.INTAKE_MIN);
+
+    // open loop, nothing reads it back
+    CanBusMonitor.getInstance().addSignalPlan(() -> CanBusMonitor.setSparkFramePeriods(motor,
+      Constants.Can.SPARK_SLOW_PERIOD, Constants.Can.SPARK_IDLE_PERIOD, Constants.Can.SPARK_IDLE_PERIOD));
+    PowerManager.getInstance().register("Intake", 1, Constants.Power.INTAKE_MIN, Constants.Power.INTAKE_MAX,
+      Constants.Power.INTAKE_PRIORITY, this::setCurrentLimit);
+  }
+
+  /**
+   * Queues the motor's smart current limit, returns without waiting for the Spark MAX
+   * @param amps - current limit
+   */
+  public void setCurrentLimit(double amps) {
+    DeviceCommandQueue.getInstance().submit("Intake/Current Limit", () -> motor.setSmartCurrentLimit((int) amps));
   }
 
   /**
@@ -33,5 +53,7 @@ public class Intake extends SubsystemBase {
   }
   
   @Override
-  public void periodic() {}
+  public void periodic() {
+    profilerSection.mark();
+  }
 }
\ No newline at end of file
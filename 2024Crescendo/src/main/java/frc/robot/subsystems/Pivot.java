@@ -3,6 +3,8 @@
 // the WPILib BSD license file in the root directory of this project.
 package frc.robot.subsystems;
 
+import static edu.wpi.first.units.Units.Radians;
+
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
 import com.revrobotics.CANSparkBase;
@@ -12,11 +14,24 @@ import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkPIDController;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.simulation.SingleJointedArmSim;
 import com.reduxrobotics.sensors.canandcoder.Canandcoder;
 
 import frc.robot.Constants;
+import frc.robot.util.CanBusMonitor;
+import frc.robot.util.DeviceConfigurator;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.SysIdMechanism;
+import frc.robot.util.TelemetryLogger;
 
 public class Pivot extends SubsystemBase {
   private CANSparkMax pivotMotor;
@@ -24,31 +39,122 @@ public class Pivot extends SubsystemBase {
   private SparkPIDController pidController;
   private RelativeEncoder relativeEncoder;
   
-  private TrapezoidProfile.Constraints motionProfile = new TrapezoidProfile.Constraints(7,3);
+  private TrapezoidProfile.Constraints motionProfile = new TrapezoidProfile.Constraints(
+    Constants.Pivot.MAX_VELOCITY, Constants.Pivot.MAX_ACCELERATION);
   private TrapezoidProfile profile = new TrapezoidProfile(motionProfile);
-  public TrapezoidProfile.State setpoint = new TrapezoidProfile.State();
-  public TrapezoidProfile.State goal = new TrapezoidProfile.State();
-  
-  public double revsToMove;
+  // sim model gains until the SysId Pivot fit is copied into Constants.Pivot, MAX_OUTPUT stays at 0.2 until
+  // Constants.Pivot.CHARACTERIZED is set so they cannot push the real arm hard
+  private ArmFeedforward feedforward = new ArmFeedforward(
+    Constants.Pivot.kS, Constants.Pivot.kG, Constants.Pivot.kV, Constants.Pivot.kA);
+
+  // profile state is owned by the control notifier, only touch it while synchronized
+  private TrapezoidProfile.State setpoint = new TrapezoidProfile.State();
+  private TrapezoidProfile.State goal = new TrapezoidProfile.State();
+  private final Notifier controlNotifier = new Notifier(this::control);
+  private volatile double lastReference = Double.NaN, lastFeedforward = 0;
+  // set while SysId drives the motor directly, holdPosition() hands it back to the profile
+  private volatile boolean characterizing = false;
+  private final SysIdMechanism sysId;
+
+  private final LoopProfiler.Section profilerSection = LoopProfiler.getInstance().section("Pivot");
+
+  // all in pivot rotations
+  private final TelemetryLogger.Channel goalChannel = TelemetryLogger.getInstance().channel("Pivot/Goal", 1);
+  private final TelemetryLogger.Channel setpointChannel = TelemetryLogger.getInstance().channel("Pivot/Setpoint", 1);
+  private final TelemetryLogger.Channel relativeChannel = TelemetryLogger.getInstance().channel("Pivot/Relative Position", 1);
+  private final TelemetryLogger.Channel absoluteChannel = TelemetryLogger.getInstance().channel("Pivot/Absolute Position", 1);
+
+  // the Spark MAX has no physics sim, so its position loop is mirrored against this arm model
+  private SingleJointedArmSim armSim;
 
   /** Creates a new Pivot. */
   public Pivot() {
     pivotMotor = new CANSparkMax(Constants.Pivot.PIVOT_ID, MotorType.kBrushless);
-    pivotMotor.setInverted(true);    
     pidController = pivotMotor.getPIDController();
-    pidController.setP(Constants.Pivot.kP);
-    pidController.setI(Constants.Pivot.kI);
-    pidController.setD(Constants.Pivot.kD);
-    pidController.setOutputRange(-0.2, 0.2);
-
     relativeEncoder = pivotMotor.getEncoder();
+    // the control notifier sends references, so it only starts once nothing else is talking to the Spark MAX
+    DeviceConfigurator.getInstance().configure("Pivot", this::isConfigured, this::configure)
+      .whenComplete((configured, error) -> controlNotifier.startPeriodic(Constants.Pivot.CONTROL_PERIOD));
     
     absEncoder = new Canandcoder(Constants.Pivot.ENCODER_ID);
-    pidController.setFeedbackDevice(relativeEncoder);
 
     Canandcoder.Settings settings = new Canandcoder.Settings();
     settings.setInvertDirection(true);
     absEncoder.setSettings(settings, 0.050);
+
+    if (RobotBase.isSimulation()) {
+      armSim = new SingleJointedArmSim(DCMotor.getNEO(1), Constants.Pivot.GEAR_RATIO, Constants.Pivot.SIM_ARM_MOI,
+        Constants.Pivot.SIM_ARM_LENGTH, Math.toRadians(Constants.Pivot.SIM_MIN_ANGLE),
+        Math.toRadians(Constants.Pivot.SIM_MAX_ANGLE), true, Math.toRadians(Constants.Pivot.SIM_MIN_ANGLE));
+    }
+
+    // isReached() reads position and velocity, the position loop runs on the Spark MAX
+    CanBusMonitor.getInstance().addSignalPlan(() -> {
+      CanBusMonitor.setSparkFramePeriods(pivotMotor,
+        Constants.Can.SPARK_FAST_PERIOD, Constants.Can.SPARK_FAST_PERIOD, Constants.Can.SPARK_FAST_PERIOD);
+      Canandcoder.Settings frames = new Canandcoder.Settings();
+      frames.setPositionFramePeriod(Constants.Can.CANANDCODER_POSITION_PERIOD);
+      frames.setVelocityFramePeriod(Constants.Can.CANANDCODER_IDLE_PERIOD);
+      frames.setStatusFramePeriod(Constants.Can.CANANDCODER_IDLE_PERIOD);
+      absEncoder.setSettings(frames, 0.050);
+    });
+
+    sysId = new SysIdMechanism("Pivot", this, Radians, this::runVoltage,
+      () -> pivotMotor.getAppliedOutput() * pivotMotor.getBusVoltage(),
+      () -> Units.rotationsToRadians(getRelativePosition()),
+      () -> Units.rotationsToRadians(relativeEncoder.getVelocity() / 60.0 / Constants.Pivot.GEAR_RATIO),
+      Constants.SysId.PIVOT_RAMP, Constants.SysId.PIVOT_STEP, Constants.SysId.PIVOT_TIMEOUT)
+      .withGravity(SysIdMechanism.Gravity.COSINE, () -> Units.rotationsToRadians(getRelativePosition()))
+      .withLimits(Units.rotationsToRadians(Constants.Pivot.INTAKE_DOWN), Units.rotationsToRadians(Constants.Pivot.INTAKE_SAFE))
+      // output, velocity and position frames at the sample rate, otherwise most samples repeat the last frame
+      .withSetup(() -> CanBusMonitor.setSparkFramePeriods(pivotMotor, Constants.SysId.SPARK_PERIOD,
+        Constants.SysId.SPARK_PERIOD, Constants.SysId.SPARK_PERIOD))
+      .withRelease(() -> holdPosition(getRelativePosition()));
+
+    controlNotifier.setName("Pivot");
+  }
+
+  /**
+   * Advances the profile one control period and sends the position reference with gravity feedforward, run by the
+   * notifier so moves are not limited to the 20ms robot loop
+   */
+  private synchronized void control() {
+    if (characterizing) return;
+    double lastVelocity = setpoint.velocity;
+    setpoint = profile.calculate(Constants.Pivot.CONTROL_PERIOD, setpoint, goal);
+
+    double angle = Units.rotationsToRadians(setpoint.position - Constants.Pivot.HORIZONTAL_OFFSET);
+    double velocity = Units.rotationsToRadians(setpoint.velocity);
+    double acceleration = Units.rotationsToRadians((setpoint.velocity - lastVelocity) / Constants.Pivot.CONTROL_PERIOD);
+    double ffVolts = feedforward.calculate(angle, velocity, acceleration);
+    double revs = setpoint.position * Constants.Pivot.GEAR_RATIO;
+
+    // holding still sends the same frame every period, skip it
+    if (revs == lastReference && ffVolts == lastFeedforward) return;
+    pidController.setReference(revs, CANSparkBase.ControlType.kPosition, 0, ffVolts, SparkPIDController.ArbFFUnits.kVoltage);
+    lastReference = revs;
+    lastFeedforward = ffVolts;
+  }
+
+  /** @return whether the Spark MAX already has the inversion, gains and output range */
+  private boolean isConfigured() {
+    return pivotMotor.getInverted()
+      && pidController.getP() == Constants.Pivot.kP
+      && pidController.getI() == Constants.Pivot.kI
+      && pidController.getD() == Constants.Pivot.kD
+      && pidController.getOutputMin() == -Constants.Pivot.MAX_OUTPUT
+      && pidController.getOutputMax() == Constants.Pivot.MAX_OUTPUT;
+  }
+
+  /** @return whether every setting was accepted */
+  private boolean configure() {
+    pivotMotor.setInverted(true);
+    return DeviceConfigurator.isOk(
+      pidController.setP(Constants.Pivot.kP),
+      pidController.setI(Constants.Pivot.kI),
+      pidController.setD(Constants.Pivot.kD),
+      pidController.setOutputRange(-Constants.Pivot.MAX_OUTPUT, Constants.Pivot.MAX_OUTPUT),
+      pidController.setFeedbackDevice(relativeEncoder));
   }
 
   /** Sets relative encoder value to absolute encoder value */
@@ -57,9 +163,10 @@ public class Pivot extends SubsystemBase {
     System.out.println("REV error" + success); 
   }
 
-  /** Stops pivot motor */
+  /** Stops pivot motor, the next control period goes back to holding the setpoint */
   public void stop() {
     pivotMotor.stopMotor();
+    lastReference = Double.NaN;
   }
 
   /**
@@ -73,15 +180,59 @@ public class Pivot extends SubsystemBase {
    * Sets motion profiling goal to desired revolutions
    * @param revolutions
    */
-  public void moveTo(double revolutions) {
+  public synchronized void moveTo(double revolutions) {
     goal = new TrapezoidProfile.State(revolutions, 0);
   }
 
   /**
-   * @return whether profile has been finished
+   * Holds the pivot where it is, e.g. after homing, without profiling to it
+   * @param revolutions - current position in pivot rotations
+   */
+  public synchronized void holdPosition(double revolutions) {
+    characterizing = false;
+    lastReference = Double.NaN;
+    setpoint = new TrapezoidProfile.State(revolutions, 0);
+    goal = new TrapezoidProfile.State(revolutions, 0);
+  }
+
+  /**
+   * @return whether the pivot is at the goal and has stopped, within {@link Constants.Pivot#POSITION_TOLERANCE} and
+   * {@link Constants.Pivot#VELOCITY_TOLERANCE}
    */
   public boolean isReached(){
-    return(profile.isFinished(profile.timeLeftUntil(goal.position)));
+    double position = relativeEncoder.getPosition() / Constants.Pivot.GEAR_RATIO;
+    double velocity = relativeEncoder.getVelocity() / 60.0 / Constants.Pivot.GEAR_RATIO;
+    return Math.abs(getGoal() - position) < Constants.Pivot.POSITION_TOLERANCE
+      && Math.abs(velocity) < Constants.Pivot.VELOCITY_TOLERANCE;
+  }
+
+  /**
+   * Drives the pivot with a raw voltage and pauses the profile until {@link #holdPosition}, for SysId
+   * @param volts - motor voltage
+   */
+  public synchronized void runVoltage(double volts) {
+    characterizing = true;
+    pivotMotor.setVoltage(volts);
+  }
+
+  /** @return SysId tests for the arm, gains in volts per radian like the ArmFeedforward constants */
+  public SysIdMechanism getSysId() {
+    return sysId;
+  }
+
+  /** @return relative encoder position in pivot rotations */
+  private double getRelativePosition() {
+    return relativeEncoder.getPosition() / Constants.Pivot.GEAR_RATIO;
+  }
+
+  /** @return profile goal in pivot rotations */
+  public synchronized double getGoal() {
+    return goal.position;
+  }
+
+  /** @return current profile setpoint in pivot rotations */
+  public synchronized double getSetpoint() {
+    return setpoint.position;
   }
 
   /** Sets pivot motor to brake mode */
@@ -91,15 +242,23 @@ public class Pivot extends SubsystemBase {
 
   @Override
   public void periodic() {
-    setpoint = profile.calculate(Constants.Pivot.kD_TIME, setpoint, goal);
-    double revs = (setpoint.position) * Constants.Pivot.GEAR_RATIO;
-    pidController.setReference(revs, CANSparkBase.ControlType.kPosition);
-
-    SmartDashboard.putNumber("Rel Pos", relativeEncoder.getPosition());
-    SmartDashboard.putNumber("Abs Encoder", absEncoder.getAbsPosition());
-    SmartDashboard.putNumber("Set Point", setpoint.position); 
-    SmartDashboard.putNumber("revs", revs); 
-    SmartDashboard.putNumber("Rel Pos Degrees", (relativeEncoder.getPosition()*360)/50);
-    SmartDashboard.putNumber("Abs Encoder Degrees", absEncoder.getAbsPosition()*360);
+    goalChannel.append(getGoal());
+    setpointChannel.append(getSetpoint());
+    relativeChannel.append(relativeEncoder.getPosition() / Constants.Pivot.GEAR_RATIO);
+    absoluteChannel.append(absEncoder.getAbsPosition());
+    profilerSection.mark();
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    // same P loop, feedforward and output range the Spark MAX runs, in motor rotations
+    if (Double.isNaN(lastReference)) return;
+    double battery = RobotController.getBatteryVoltage();
+    double output = MathUtil.clamp(Constants.Pivot.kP * (lastReference - relativeEncoder.getPosition()) + lastFeedforward / battery,
+      -Constants.Pivot.MAX_OUTPUT, Constants.Pivot.MAX_OUTPUT);
+    armSim.setInputVoltage(output * battery);
+    armSim.update(TimedRobot.kDefaultPeriod);
+
+    relativeEncoder.setPosition(Units.radiansToRotations(armSim.getAngleRads()) * Constants.Pivot.GEAR_RATIO);
   }
 }
\ No newline at end of file
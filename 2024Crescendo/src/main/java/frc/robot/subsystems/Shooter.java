@@ -3,17 +3,44 @@
 // the WPILib BSD license file in the root directory of this project.
 package frc.robot.subsystems;
 
+import static edu.wpi.first.units.Units.Rotations;
+
 import frc.robot.Constants;
+import frc.robot.util.CanBusMonitor;
+import frc.robot.util.DeviceCommandQueue;
+import frc.robot.util.DeviceConfigurator;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PowerManager;
+import frc.robot.util.SysIdMechanism;
+import frc.robot.util.TelemetryLogger;
 
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.simulation.FlywheelSim;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
+import com.ctre.phoenix6.configs.CurrentLimitsConfigs;
 import com.ctre.phoenix6.configs.TalonFXConfiguration;
 import com.ctre.phoenix6.controls.VelocityVoltage;
+import com.ctre.phoenix6.controls.VoltageOut;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.sim.TalonFXSimState;
+
+import java.util.concurrent.CompletableFuture;
 
 public class Shooter extends SubsystemBase {
   private TalonFX topLeftMotor, topRightMotor, bottomLeftMotor, bottomRightMotor;
+  private final LoopProfiler.Section profilerSection = LoopProfiler.getInstance().section("Shooter");
+  private final TelemetryLogger.Channel topChannel = TelemetryLogger.getInstance().channel("Shooter/Top Setpoint", 1);
+  private final TelemetryLogger.Channel bottomChannel = TelemetryLogger.getInstance().channel("Shooter/Bottom Setpoint", 1);
+  private final SysIdMechanism[] flywheelSysIds;
+  private final CompletableFuture<Void> configured;
+  private TalonFX[] simMotors;
+  private FlywheelSim[] flywheelSims;
 
   /** Creates a new Shooter. */
   public Shooter() {
@@ -23,25 +50,101 @@ public class Shooter extends SubsystemBase {
     bottomRightMotor = new TalonFX(Constants.Shooter.BOTTOM_RIGHT_MOTOR_ID);
 
     TalonFXConfiguration config = new TalonFXConfiguration();
+    config.CurrentLimits = new CurrentLimitsConfigs()
+      .withSupplyCurrentLimitEnable(true)
+      .withSupplyCurrentLimit(Constants.Power.SHOOTER_MIN);
+
+    configured = CompletableFuture.allOf(
+      configMotor("Shooter Top Left", topLeftMotor, config),
+      configMotor("Shooter Top Right", topRightMotor, config),
+      configMotor("Shooter Bottom Left", bottomLeftMotor, config),
+      configMotor("Shooter Bottom Right", bottomRightMotor, config));
 
-    configMotor(topLeftMotor, config);
-    configMotor(topRightMotor, config);
-    configMotor(bottomLeftMotor, config);
-    configMotor(bottomRightMotor, config);
+    TalonFX[] motors = {topLeftMotor, topRightMotor, bottomLeftMotor, bottomRightMotor};
+    flywheelSysIds = new SysIdMechanism[] {
+      flywheelSysId("Shooter Top Left", topLeftMotor, motors), flywheelSysId("Shooter Top Right", topRightMotor, motors),
+      flywheelSysId("Shooter Bottom Left", bottomLeftMotor, motors), flywheelSysId("Shooter Bottom Right", bottomRightMotor, motors)
+    };
+
+    PowerManager.getInstance().register("Shooter", 4, Constants.Power.SHOOTER_MIN, Constants.Power.SHOOTER_MAX,
+      Constants.Power.SHOOTER_PRIORITY, this::setCurrentLimit);
+
+    if (RobotBase.isSimulation()) {
+      simMotors = new TalonFX[] {topLeftMotor, topRightMotor, bottomLeftMotor, bottomRightMotor};
+      flywheelSims = new FlywheelSim[simMotors.length];
+      for (int i = 0; i < simMotors.length; i++) {
+        flywheelSims[i] = new FlywheelSim(DCMotor.getFalcon500(1), 1, Constants.Shooter.SIM_FLYWHEEL_MOI);
+      }
+    }
   }
 
   /**
    * Configure motor, add PID
+   * @param name - motor name for the configuration log
    * @param motor  - motor to configure
    * @param config - configuration to use
+   * @return completes when the motor is configured
    */
-  private void configMotor(TalonFX motor, TalonFXConfiguration config) {
+  private CompletableFuture<Boolean> configMotor(String name, TalonFX motor, TalonFXConfiguration config) {
     config.Slot0.kP = Constants.Shooter.kP;
     config.Slot0.kI = Constants.Shooter.kI;
     config.Slot0.kD = Constants.Shooter.kD;
+    config.MotorOutput.NeutralMode = NeutralModeValue.Coast;
+
+    CompletableFuture<Boolean> configured = DeviceConfigurator.getInstance().configure(name, motor, config);
 
-    motor.setNeutralMode(NeutralModeValue.Coast);
-    motor.getConfigurator().apply(config);
+    // closed loop runs on the motor, velocity is only for the dashboard and logs
+    CanBusMonitor.getInstance().addSignalPlan(() -> {
+      motor.getVelocity().setUpdateFrequency(Constants.Can.STATUS_FREQUENCY);
+      motor.optimizeBusUtilization();
+    });
+    return configured;
+  }
+
+  /**
+   * @param name - flywheel name for the log and dashboard
+   * @param motor - motor driving the flywheel
+   * @param motors - every shooter motor, the others coast during the tests
+   * @return SysId tests for one flywheel, in motor rotations like Slot0
+   */
+  private SysIdMechanism flywheelSysId(String name, TalonFX motor, TalonFX[] motors) {
+    VoltageOut request = new VoltageOut(0);
+    var position = motor.getPosition().clone();
+    var velocity = motor.getVelocity().clone();
+    var acceleration = motor.getAcceleration().clone();
+    var voltage = motor.getMotorVoltage().clone();
+    return new SysIdMechanism(name, this, Rotations, volts -> {
+        for (TalonFX other : motors) {
+          if (other != motor) other.stopMotor();
+        }
+        motor.setControl(request.withOutput(volts));
+      },
+      voltage::getValueAsDouble, position::getValueAsDouble, velocity::getValueAsDouble,
+      Constants.SysId.SHOOTER_RAMP, Constants.SysId.SHOOTER_STEP, Constants.SysId.SHOOTER_TIMEOUT)
+      .withSignals(position, velocity, acceleration, voltage)
+      .withAcceleration(acceleration::getValueAsDouble);
+  }
+
+  /**
+   * @param flywheel - 0 top left, 1 top right, 2 bottom left, 3 bottom right
+   * @return SysId tests for that flywheel, the others coast
+   */
+  public SysIdMechanism getFlywheelSysId(int flywheel) {
+    return flywheelSysIds[flywheel];
+  }
+
+  /**
+   * Queues a new supply current limit for every motor after their boot configs, returns without waiting for the applies
+   * @param amps - supply current limit per motor
+   */
+  public void setCurrentLimit(double amps) {
+    var limits = new CurrentLimitsConfigs().withSupplyCurrentLimitEnable(true).withSupplyCurrentLimit(amps);
+    DeviceCommandQueue.getInstance().submit("Shooter/Current Limits", configured, () -> {
+      topLeftMotor.getConfigurator().apply(limits);
+      topRightMotor.getConfigurator().apply(limits);
+      bottomLeftMotor.getConfigurator().apply(limits);
+      bottomRightMotor.getConfigurator().apply(limits);
+    });
   }
 
   /**
@@ -52,6 +155,8 @@ public class Shooter extends SubsystemBase {
    * @param bottomAcceleration
    */
   public void runShooter(double topVelocity, double topAcceleration, double bottomVelocity, double bottomAcceleration) {
+    topChannel.append(topVelocity);
+    bottomChannel.append(bottomVelocity);
     topLeftMotor.setControl(new VelocityVoltage(-topVelocity, -topAcceleration, false, 0.0, 0, false, false, false));
     topRightMotor.setControl(new VelocityVoltage(topVelocity, topAcceleration, false, 0.0, 0, false, false, false));
     bottomLeftMotor
@@ -64,6 +169,8 @@ public class Shooter extends SubsystemBase {
    * Stops all shooter motors
    */
   public void stopMotors() {
+    topChannel.append(0.0);
+    bottomChannel.append(0.0);
     topLeftMotor.setControl(new VelocityVoltage(0, 0, false, 0.0, 0, false, false, false));
     topRightMotor.setControl(new VelocityVoltage(0, 0, false, 0.0, 0, false, false, false));
     bottomLeftMotor.setControl(new VelocityVoltage(0, 0, false, 0.0, 0, false, false, false));
@@ -72,5 +179,22 @@ public class Shooter extends SubsystemBase {
 
   @Override
   public void periodic() {
+    profilerSection.mark();
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    // each flywheel is direct driven by its own motor
+    for (int i = 0; i < simMotors.length; i++) {
+      TalonFXSimState simState = simMotors[i].getSimState();
+      simState.setSupplyVoltage(RobotController.getBatteryVoltage());
+
+      flywheelSims[i].setInputVoltage(simState.getMotorVoltage());
+      flywheelSims[i].update(TimedRobot.kDefaultPeriod);
+
+      double rotorVelocity = Units.radiansToRotations(flywheelSims[i].getAngularVelocityRadPerSec());
+      simState.setRotorVelocity(rotorVelocity);
+      simState.addRotorPosition(rotorVelocity * TimedRobot.kDefaultPeriod);
+    }
   }
 }
\ No newline at end of file
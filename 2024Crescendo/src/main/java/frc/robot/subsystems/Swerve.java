@@ -1,36 +1,86 @@
 package frc.robot.subsystems;
 
+import static edu.wpi.first.units.Units.Rotations;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import com.ctre.phoenix6.BaseStatusSignal;
 import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.util.HolonomicPathFollowerConfig;
 import com.pathplanner.lib.util.PIDConstants;
 import com.pathplanner.lib.util.ReplanningConfig;
 
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.filter.SlewRateLimiter;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 
 import edu.wpi.first.wpilibj.ADIS16470_IMU;
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.shuffleboard.BuiltInLayouts;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
+import edu.wpi.first.wpilibj.simulation.ADIS16470_IMUSim;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
 import frc.robot.Constants;
+import frc.robot.modules.OdometryThread;
 import frc.robot.modules.SwerveModule;
+import frc.robot.modules.SwerveSetpointGenerator;
+import frc.robot.modules.TractionMonitor;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.TelemetryLogger;
+import frc.robot.util.PowerManager;
+import frc.robot.util.SysIdMechanism;
+import frc.robot.util.TelemetryPublisher;
 
 public class Swerve extends SubsystemBase{
     public final SwerveModule frontLeft, frontRight, backLeft, backRight;
+    private final SwerveModule[] modules;
+    private final BaseStatusSignal[] moduleSignals;
+
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+        Constants.Swerve.SWERVE_MAX_SPEED, Constants.Swerve.STEER_MAX_VELOCITY * 2 * Math.PI, Constants.Swerve.DRIVE_MAX_ACCELERATION,
+        Constants.Swerve.m_frontLeftLocation, Constants.Swerve.m_frontRightLocation,
+        Constants.Swerve.m_backLeftLocation, Constants.Swerve.m_backRightLocation);
+    private final double[] measuredAngles = new double[4];
+    private final TractionMonitor tractionMonitor = new TractionMonitor(
+        Constants.Swerve.m_frontLeftLocation, Constants.Swerve.m_frontRightLocation,
+        Constants.Swerve.m_backLeftLocation, Constants.Swerve.m_backRightLocation);
+    private double lastDriveTime = Double.NEGATIVE_INFINITY;
 
     private final ADIS16470_IMU gyro;
-    public final SwerveDriveOdometry odometry;
+    private ADIS16470_IMUSim gyroSim;
+    private double simYaw = 0;
+    public final SwerveDrivePoseEstimator poseEstimator;
+    private final TimeInterpolatableBuffer<Pose2d> poseHistory = TimeInterpolatableBuffer.createBuffer(Constants.Vision.POSE_HISTORY_SECONDS);
+    private final OdometryThread odometryThread;
+    private final OdometryThread.SampleConsumer odometryUpdater;
+    private final SwerveModulePosition[] latestPositions;
+    // reused by the odometry updater and telemetry, new Rotation2d only when an angle changed
+    private Rotation2d gyroAngle;
+    private final SwerveModuleState[] measuredStates = {
+        new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState()};
+    private final SwerveModuleState[] desiredStates = {
+        new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState()};
     private Field2d field = new Field2d();
+    private final LoopProfiler.Section profilerSection = LoopProfiler.getInstance().section("Swerve");
+    private final TelemetryLogger.Channel poseChannel = TelemetryLogger.getInstance().channel("Swerve/Pose", 3);
+    private final double[] loggedPose = new double[3];
+
+    private final SysIdMechanism driveSysId, steerSysId;
 
     private SlewRateLimiter xLimiter, yLimiter, rotationLimiter;
     private Pose2d pose;
@@ -51,15 +101,65 @@ public class Swerve extends SubsystemBase{
             .withSize(2, 4)
             .withPosition(6, 0));
         
+        modules = new SwerveModule[] {frontLeft, frontRight, backLeft, backRight};
+        moduleSignals = Stream.of(modules).flatMap(module -> Stream.of(module.getSignals())).toArray(BaseStatusSignal[]::new);
+        
         gyro = new ADIS16470_IMU();
+        if (RobotBase.isSimulation()) gyroSim = new ADIS16470_IMUSim(gyro);
 
         driveTrainTab.addDouble("Gyro Angle", () -> getRotation2d().getDegrees());        
         //driveTrainTab.add("field", field).withSize(8, 5).withPosition(1, 1);
 
-        odometry = new SwerveDriveOdometry(Constants.Swerve.SWERVE_DRIVE_KINEMATICS, getRotation2d(), 
-        new SwerveModulePosition[] {
+        latestPositions = new SwerveModulePosition[] {
             frontLeft.getPosition(), frontRight.getPosition(), backLeft.getPosition(), backRight.getPosition()
-        });
+        };
+        poseEstimator = new SwerveDrivePoseEstimator(Constants.Swerve.SWERVE_DRIVE_KINEMATICS, getRotation2d(), latestPositions, new Pose2d());
+        pose = poseEstimator.getEstimatedPosition();
+
+        odometryUpdater = sample -> {
+            // slipping wheels are replaced with what the rest of the robot says they rolled
+            tractionMonitor.correct(sample);
+            for (int i = 0; i < latestPositions.length; i++) {
+                latestPositions[i].distanceMeters = sample.distances[i];
+                latestPositions[i].angle = SwerveModule.rotation(latestPositions[i].angle, sample.angles[i]);
+            }
+            gyroAngle = SwerveModule.rotation(gyroAngle, sample.yaw);
+            pose = poseEstimator.updateWithTime(sample.timestamp, gyroAngle, latestPositions);
+            poseHistory.addSample(sample.timestamp, pose);
+        };
+        odometryThread = new OdometryThread(this::getYaw, this::getYawRate, frontLeft, frontRight, backLeft, backRight);
+        odometryThread.start();
+
+        TelemetryPublisher telemetry = TelemetryPublisher.getInstance();
+        telemetry.addStructArray("Swerve/Measured States", SwerveModuleState.struct, TelemetryPublisher.Tier.EVERY_LOOP, this::getModuleStates);
+        telemetry.addStructArray("Swerve/Desired States", SwerveModuleState.struct, TelemetryPublisher.Tier.EVERY_LOOP, this::getDesiredStates);
+        telemetry.addStructArray("Swerve/Pose", Pose2d.struct, TelemetryPublisher.Tier.SLOW, () -> new Pose2d[] {pose});
+        telemetry.addNumber("Swerve/Slipping Modules", TelemetryPublisher.Tier.EVERY_LOOP, tractionMonitor::getSlippingCount);
+        telemetry.addNumber("Swerve/Rejected Samples", TelemetryPublisher.Tier.SLOW, tractionMonitor::getRejectedSamples);
+
+        PowerManager.getInstance().register("Swerve Drive", modules.length, Constants.Power.DRIVE_MIN,
+            Constants.Power.DRIVE_MAX, Constants.Power.DRIVE_PRIORITY, amps -> {
+                for (SwerveModule module : modules) module.setDriveCurrentLimit(amps);
+            });
+
+        // every module at once, measured as the average of the four
+        BaseStatusSignal[] driveSignals = Stream.of(modules).flatMap(module -> Stream.of(module.getSysIdSignals(false))).toArray(BaseStatusSignal[]::new);
+        driveSysId = new SysIdMechanism("Swerve Drive", this, Rotations, this::setDriveVoltage,
+            () -> average(driveSignals, 3), () -> average(driveSignals, 0), () -> average(driveSignals, 1),
+            Constants.SysId.DRIVE_RAMP, Constants.SysId.DRIVE_STEP, Constants.SysId.DRIVE_TIMEOUT)
+            .withSignals(driveSignals)
+            .withAcceleration(() -> average(driveSignals, 2))
+            .withRelease(this::stopModules);
+        BaseStatusSignal[] steerSignals = Stream.of(modules).flatMap(module -> Stream.of(module.getSysIdSignals(true))).toArray(BaseStatusSignal[]::new);
+        steerSysId = new SysIdMechanism("Swerve Steer", this, Rotations, this::setSteerVoltage,
+            () -> average(steerSignals, 3), () -> average(steerSignals, 0), () -> average(steerSignals, 1),
+            Constants.SysId.STEER_RAMP, Constants.SysId.STEER_STEP, Constants.SysId.STEER_TIMEOUT)
+            .withSignals(steerSignals)
+            .withAcceleration(() -> average(steerSignals, 2))
+            .withRelease(this::stopModules);
+
+        driveTrainTab.addDouble("Odometry Hz", odometryThread::getFrequency);
+        driveTrainTab.addNumber("Odometry Failed Waits", odometryThread::getFailedWaits);
 
         //took autobuilder from pathplanner - might need to be used in the auto file (driveRobotRelative not coded yet)
         AutoBuilder.configureHolonomic(
@@ -68,15 +168,16 @@ public class Swerve extends SubsystemBase{
             this::getRobotRelativeSpeeds, // ChassisSpeeds supplier. MUST BE ROBOT RELATIVE
             this::driveRobotRelative , // Method that will drive the robot given ROBOT RELATIVE ChassisSpeeds
             new HolonomicPathFollowerConfig( // HolonomicPathFollowerConfig, this should likely live in your Constants class
-                new PIDConstants(0.0001, 0.0, 0.0), // Translation PID constants
+                new PIDConstants(Constants.Auto.kPTranslationController, 0.0, 0.0), // Translation PID constants
                 new PIDConstants(Constants.Auto.kPThetaController, 0.0, 0.0), // Rotation PID constants
-                0.3, // Max module speed, in m/s
-                0.41309, // Drive base radius in meters. Distance from robot center to furthest module.
+                Constants.Auto.kMaxModuleSpeedMetersPerSecond, // Max module speed, in m/s
+                Constants.Auto.kDriveBaseRadiusMeters, // Drive base radius in meters. Distance from robot center to furthest module.
                 new ReplanningConfig() // Default path replanning config. See the API for the options here
         ), () -> {
                     // Boolean supplier that controls when the path will be mirrored for the red alliance
                     // This will flip the path being followed to the red side of the field.
                     // THE ORIGIN WILL REMAIN ON THE BLUE SIDE
+                    // Paths flipped ahead of time by AutonomousRoutines or planned by Pathfinder set preventFlipping
 
                     var alliance = DriverStation.getAlliance();
                     if (alliance.isPresent()) {
@@ -88,6 +189,7 @@ public class Swerve extends SubsystemBase{
     }
     
     public void stopModules() {
+        lastDriveTime = Double.NEGATIVE_INFINITY;
         frontLeft.stop();
         frontRight.stop();
         backLeft.stop();
@@ -112,22 +214,35 @@ public class Swerve extends SubsystemBase{
         //pigeon version
         return gyro.getAngle(gyro.getYawAxis());
     }
+
+    /** @return gyro yaw rate in degrees per second, counterclockwise positive */
+    public double getYawRate() {
+        return gyro.getRate(gyro.getYawAxis());
+    }
     
+    /** @return measured module states, the same array refilled every call */
     public SwerveModuleState[] getModuleStates() {
-        return new SwerveModuleState[] {
-            frontLeft.getState(),
-            frontRight.getState(), 
-            backLeft.getState(),
-            backRight.getState()
-        };
+        for (int i = 0; i < modules.length; i++) {
+            modules[i].getState(measuredStates[i]);
+        }
+        return measuredStates;
+    }
+
+    /** @return states last passed to each module, before optimizing, the same array refilled every call */
+    public SwerveModuleState[] getDesiredStates() {
+        for (int i = 0; i < modules.length; i++) {
+            modules[i].getDesiredState(desiredStates[i]);
+        }
+        return desiredStates;
     }
 
+    /** @return module positions from the latest odometry sample applied */
     public SwerveModulePosition[] getModulePositions() {
         return new SwerveModulePosition[] {
-            frontLeft.getPosition(), 
-            frontRight.getPosition(), 
-            backLeft.getPosition(),
-            backRight.getPosition()
+            latestPositions[0].copy(),
+            latestPositions[1].copy(),
+            latestPositions[2].copy(),
+            latestPositions[3].copy()
         };
     }
 
@@ -140,8 +255,65 @@ public class Swerve extends SubsystemBase{
 
     //finish
     public void driveRobotRelative(ChassisSpeeds speeds) {
-        SwerveModuleState[] moduleState = Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(speeds);
-        this.setModuleStates(moduleState);
+        drive(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond, false);
+    }
+
+    /**
+     * Drives without allocating through the setpoint generator: the request is discretized over the loop and limited to
+     * what the modules can steer and accelerate to this loop
+     * @param vx - forward speed in m/s
+     * @param vy - left speed in m/s
+     * @param omega - counterclockwise rotation speed in rad/s
+     * @param fieldRelative - whether vx and vy are relative to the field
+     */
+    public void drive(double vx, double vy, double omega, boolean fieldRelative) {
+        // start from the measured modules when something else drove them or nothing drove for a while
+        double now = Timer.getFPGATimestamp();
+        if (now - lastDriveTime > 2 * TimedRobot.kDefaultPeriod) {
+            for (int i = 0; i < modules.length; i++) {
+                measuredAngles[i] = modules[i].getAngleRadians();
+            }
+            setpointGenerator.reset(measuredAngles);
+        }
+        lastDriveTime = now;
+
+        setpointGenerator.calculate(vx, vy, omega, Math.toRadians(getYaw()), fieldRelative, TimedRobot.kDefaultPeriod);
+        for (int i = 0; i < modules.length; i++) {
+            modules[i].setState(setpointGenerator.speeds[i], setpointGenerator.angles[i]);
+        }
+    }
+
+    /** @param volts - voltage for every drive motor, modules held straight */
+    public void setDriveVoltage(double volts) {
+        lastDriveTime = Double.NEGATIVE_INFINITY;
+        for (SwerveModule module : modules) module.setDriveVoltage(volts);
+    }
+
+    /** @param volts - voltage for every steer motor, drive motors stopped */
+    public void setSteerVoltage(double volts) {
+        lastDriveTime = Double.NEGATIVE_INFINITY;
+        for (SwerveModule module : modules) module.setSteerVoltage(volts);
+    }
+
+    /** @return SysId tests for the drive motors, gains in volts per wheel rotation */
+    public SysIdMechanism getDriveSysId() {
+        return driveSysId;
+    }
+
+    /** @return SysId tests for the steer motors, gains in volts per module rotation */
+    public SysIdMechanism getSteerSysId() {
+        return steerSysId;
+    }
+
+    /** @return average over the modules of one signal from {@link SwerveModule#getSysIdSignals} */
+    private static double average(BaseStatusSignal[] moduleSignals, int offset) {
+        double sum = 0;
+        int count = 0;
+        for (int i = offset; i < moduleSignals.length; i += 4) {
+            sum += moduleSignals[i].getValueAsDouble();
+            count++;
+        }
+        return sum / count;
     }
 
     public static double signedSquare(double a) {
@@ -152,6 +324,7 @@ public class Swerve extends SubsystemBase{
     }
 
     public void setModuleStates(SwerveModuleState[] desiredStates) {
+        lastDriveTime = Double.NEGATIVE_INFINITY;
         frontLeft.setState(desiredStates[0]);
         frontRight.setState(desiredStates[1]);
         backLeft.setState(desiredStates[2]);
@@ -162,15 +335,75 @@ public class Swerve extends SubsystemBase{
         return pose;
     }
 
+    /** @return this alliance's speaker in blue origin field coordinates */
+    public Translation2d getSpeaker() {
+        var alliance = DriverStation.getAlliance();
+        return alliance.isPresent() && alliance.get() == DriverStation.Alliance.Red
+            ? Constants.Vision.RED_SPEAKER : Constants.Vision.BLUE_SPEAKER;
+    }
+
+    /** @return meters from the robot to this alliance's speaker */
+    public double getSpeakerDistance() {
+        return pose.getTranslation().getDistance(getSpeaker());
+    }
+
     public void resetOdometry (Pose2d pose) {
-        odometry.resetPosition(getRotation2d(), getModulePositions(), pose);
+        // slip corrections are relative to the old pose, take them back out before rebasing on the new one
+        tractionMonitor.reset(latestPositions);
+        poseEstimator.resetPosition(getRotation2d(), latestPositions, pose);
+        poseHistory.clear();
+        this.pose = pose;
+    }
+
+    /**
+     * @param timestamp - FPGA time in seconds
+     * @return fused pose at that time, empty if it is older than the pose history
+     */
+    public Optional<Pose2d> getPoseAt(double timestamp) {
+        return poseHistory.getSample(timestamp);
+    }
+
+    /**
+     * Fuses the botpose of a camera frame, frames without a pose are ignored
+     * @param frame - frame from {@link Vision}
+     */
+    public void addVisionMeasurement(VisionFrame frame) {
+        if (frame.pose() == null) return;
+        addVisionMeasurement(frame.pose(), frame.timestamp(), frame.tagCount(), frame.averageTagDistance());
+    }
+
+    /**
+     * Fuses a vision pose at the time the frame was captured, trusting it less the fewer and further away the tags are
+     * @param visionPose - blue origin field pose from the camera
+     * @param timestamp - FPGA time the frame was captured, in seconds
+     * @param tagCount - number of tags in the frame
+     * @param averageTagDistance - average distance to those tags in meters
+     */
+    public void addVisionMeasurement(Pose2d visionPose, double timestamp, int tagCount, double averageTagDistance) {
+        if (tagCount <= 0) return;
+
+        if (tagCount == 1) {
+            // a single far tag is too ambiguous, and a single tag that disagrees with where we were is likely a bad solve
+            if (averageTagDistance > Constants.Vision.MAX_SINGLE_TAG_DISTANCE) return;
+            Optional<Pose2d> poseAtCapture = getPoseAt(timestamp);
+            if (poseAtCapture.isPresent()
+                && poseAtCapture.get().getTranslation().getDistance(visionPose.getTranslation()) > Constants.Vision.MAX_SINGLE_TAG_JUMP) return;
+        }
+
+        double distanceScale = averageTagDistance * averageTagDistance / tagCount;
+        double xyStdDev = Constants.Vision.XY_STD_DEV_COEFFICIENT * distanceScale;
+        double thetaStdDev = tagCount > 1 ? Constants.Vision.THETA_STD_DEV_COEFFICIENT * distanceScale : Constants.Vision.UNTRUSTED_STD_DEV;
+
+        poseEstimator.addVisionMeasurement(visionPose, timestamp, VecBuilder.fill(xyStdDev, xyStdDev, thetaStdDev));
     }
 
     public void resetGyro () {
         gyro.setGyroAngle(gyro.getYawAxis(), 0);
+        tractionMonitor.reset();
     }
 
     public void goToAngle(double angleInDegrees){
+        lastDriveTime = Double.NEGATIVE_INFINITY;
         SwerveModuleState fixedDegree = new SwerveModuleState(0, Rotation2d.fromDegrees(angleInDegrees));
         frontLeft.setState(fixedDegree);
         frontRight.setState(fixedDegree);
@@ -179,6 +412,7 @@ public class Swerve extends SubsystemBase{
     }
 
     public void defenseMode(){
+        lastDriveTime = Double.NEGATIVE_INFINITY;
         SwerveModuleState fLDefenseState= new SwerveModuleState(0, Rotation2d.fromDegrees(45));
         SwerveModuleState fRDefenseState = new SwerveModuleState(0, Rotation2d.fromDegrees(135));
         SwerveModuleState bLDefenseState= new SwerveModuleState(0, Rotation2d.fromDegrees(45));
@@ -213,22 +447,45 @@ public class Swerve extends SubsystemBase{
 
     @Override
     public void periodic() {
+        // one batched refresh for every module, each module then reads its own snapshot
+        BaseStatusSignal.refreshAll(moduleSignals);
         frontLeft.periodic();
         frontRight.periodic();
         backLeft.periodic();
         backRight.periodic();
 
-        var gyroAngle = getRotation2d();
+        // apply every sample the odometry thread took since the last loop
+        odometryThread.drain(odometryUpdater);
 
-        pose = odometry.update(getRotation2d(), new SwerveModulePosition[] {
-            frontLeft.getPosition(), frontRight.getPosition(), backLeft.getPosition(), backRight.getPosition()
-          });
+        // traction control, modules that slipped this loop get less acceleration until they grip again
+        tractionMonitor.periodic(TimedRobot.kDefaultPeriod);
+        for (int i = 0; i < modules.length; i++) {
+            setpointGenerator.setAccelerationScale(i, tractionMonitor.getAccelerationScale(i));
+        }
 
           //System.out.println(pose);
           field.setRobotPose(pose);
+          loggedPose[0] = pose.getX();
+          loggedPose[1] = pose.getY();
+          loggedPose[2] = pose.getRotation().getRadians();
+          poseChannel.append(loggedPose);
+          profilerSection.mark();
           
     
 
     }
 
+    @Override
+    public void simulationPeriodic() {
+        for (SwerveModule module : modules) {
+            module.simulationPeriodic(TimedRobot.kDefaultPeriod);
+        }
+
+        // integrate the yaw rate the simulated modules produce
+        double simYawRate = Math.toDegrees(getRobotRelativeSpeeds().omegaRadiansPerSecond);
+        simYaw += simYawRate * TimedRobot.kDefaultPeriod;
+        gyroSim.setGyroAngleZ(simYaw);
+        gyroSim.setGyroRateZ(simYawRate);
+    }
+
 }
@@ -1,33 +1,126 @@
 package frc.robot.subsystems;
 
 import frc.robot.Constants;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.TelemetryLogger;
+
+import java.util.function.Consumer;
 
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.DoubleSubscriber;
 import edu.wpi.first.networktables.NetworkTable;
-import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.TimestampedDouble;
+import edu.wpi.first.networktables.TimestampedDoubleArray;
 
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 public class Vision extends SubsystemBase {
   //https://readthedocs.org/projects/limelight/downloads/pdf/latest/
-  private NetworkTable limelightTable;
-  private double xOffset = -100000;
+  private final DoubleArraySubscriber botposeSubscriber;
+  private final DoubleSubscriber txSubscriber, tySubscriber, taSubscriber, tvSubscriber, tidSubscriber, tlSubscriber, clSubscriber;
+  private final DoublePublisher pipelinePublisher;
+
+  private VisionFrame latestFrame = new VisionFrame(0, false, 0, 0, 0, -1, 0, 0, 0, null);
+  private Consumer<VisionFrame> frameConsumer = frame -> {};
   private boolean isInRange = false;
+  private final LoopProfiler.Section profilerSection = LoopProfiler.getInstance().section("Vision");
+
+  // [capture timestamp, tv, tx, ty, ta, tid, tag count, average tag distance, latency, x, y, theta], pose is NaN without tags
+  private final TelemetryLogger.Channel frameChannel = TelemetryLogger.getInstance().channel("Vision/Frame", 12);
+  private final double[] loggedFrame = new double[12];
 
   /** Creates new Vision */
   public Vision() {
-    limelightTable = NetworkTableInstance.getDefault().getTable("limelight");
+    NetworkTable limelightTable = NetworkTableInstance.getDefault().getTable("limelight");
+
+    // queue every update, even repeated values, so no camera frame is dropped between loops
+    PubSubOption[] options = {PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(Constants.Vision.FRAME_QUEUE_SIZE)};
+    botposeSubscriber = limelightTable.getDoubleArrayTopic("botpose_wpiblue").subscribe(new double[0], options);
+    txSubscriber = limelightTable.getDoubleTopic("tx").subscribe(0, options);
+    tySubscriber = limelightTable.getDoubleTopic("ty").subscribe(0, options);
+    taSubscriber = limelightTable.getDoubleTopic("ta").subscribe(0, options);
+    tvSubscriber = limelightTable.getDoubleTopic("tv").subscribe(0, options);
+    tidSubscriber = limelightTable.getDoubleTopic("tid").subscribe(-1, options);
+    tlSubscriber = limelightTable.getDoubleTopic("tl").subscribe(0, options);
+    clSubscriber = limelightTable.getDoubleTopic("cl").subscribe(0, options);
+    pipelinePublisher = limelightTable.getDoubleTopic("pipeline").publish();
+
     updateValues();
   }
 
-  /** Update x offset value */
+  /**
+   * Sets where each new frame is sent
+   * @param consumer - e.g. {@link Swerve#addVisionMeasurement(VisionFrame)}
+   */
+  public void setFrameConsumer(Consumer<VisionFrame> consumer) {
+    frameConsumer = consumer;
+  }
+
+  /** Builds a {@link VisionFrame} for every botpose update since the last call and sends each to the frame consumer */
   public void updateValues() {
-    NetworkTableEntry tx = limelightTable.getEntry("tx");
-    xOffset = tx.getDouble(0.0);
-    SmartDashboard.putNumber("X Offset", xOffset);
+    TimestampedDoubleArray[] botposes = botposeSubscriber.readQueue();
+    TimestampedDouble[] tx = txSubscriber.readQueue(), ty = tySubscriber.readQueue(), ta = taSubscriber.readQueue();
+    TimestampedDouble[] tv = tvSubscriber.readQueue(), tid = tidSubscriber.readQueue();
+    TimestampedDouble[] tl = tlSubscriber.readQueue(), cl = clSubscriber.readQueue();
+
+    for (TimestampedDoubleArray botpose : botposes) {
+      long time = botpose.serverTime;
+      VisionFrame last = latestFrame;
+
+      boolean hasTarget = valueAt(tv, time, last.hasTarget() ? 1 : 0) >= 1;
+      double latency = (valueAt(tl, time, 0) + valueAt(cl, time, 0)) / 1000.0;
+
+      // [x, y, z, roll, pitch, yaw, latency, tag count, tag span, average tag distance, average tag area]
+      double[] values = botpose.value;
+      boolean hasPose = hasTarget && values.length >= 11 && values[7] > 0;
+      Pose2d pose = hasPose ? new Pose2d(values[0], values[1], Rotation2d.fromDegrees(values[5])) : null;
+
+      latestFrame = new VisionFrame(
+        time / 1e6 - latency, hasTarget,
+        valueAt(tx, time, last.tx()), valueAt(ty, time, last.ty()), valueAt(ta, time, last.ta()),
+        (int) valueAt(tid, time, last.primaryTagId()),
+        hasPose ? (int) values[7] : 0, hasPose ? values[9] : 0, latency, pose);
+      logFrame(latestFrame);
+      frameConsumer.accept(latestFrame);
+    }
+  }
+
+  private void logFrame(VisionFrame frame) {
+    loggedFrame[0] = frame.timestamp();
+    loggedFrame[1] = frame.hasTarget() ? 1 : 0;
+    loggedFrame[2] = frame.tx();
+    loggedFrame[3] = frame.ty();
+    loggedFrame[4] = frame.ta();
+    loggedFrame[5] = frame.primaryTagId();
+    loggedFrame[6] = frame.tagCount();
+    loggedFrame[7] = frame.averageTagDistance();
+    loggedFrame[8] = frame.latency();
+    loggedFrame[9] = frame.pose() != null ? frame.pose().getX() : Double.NaN;
+    loggedFrame[10] = frame.pose() != null ? frame.pose().getY() : Double.NaN;
+    loggedFrame[11] = frame.pose() != null ? frame.pose().getRotation().getRadians() : Double.NaN;
+    frameChannel.append(loggedFrame);
+  }
+
+  /**
+   * The Limelight publishes all values of a frame in one flush, so the matching value is the last one queued up to
+   * just after the botpose update
+   * @param queue - values read this loop
+   * @param time - server time of the frame in microseconds
+   * @param fallback - value from the previous frame, used when this value was not republished
+   */
+  private static double valueAt(TimestampedDouble[] queue, long time, double fallback) {
+    double value = fallback;
+    for (TimestampedDouble sample : queue) {
+      if (sample.serverTime <= time + Constants.Vision.FRAME_MATCH_TOLERANCE_MICROS) value = sample.value;
+    }
+    return value;
   }
 
   /**
@@ -36,7 +129,7 @@ public class Vision extends SubsystemBase {
    */
   public void configDashboard(ShuffleboardTab tab){
     tab.addCamera("Limelight Camera", "m_limelight", "http://10.19.67.11:5800/");
-    tab.addDouble("Limelight xOffset", () -> limelightTable.getEntry("tx").getDouble(0.0));
+    tab.addDouble("Limelight xOffset", () -> latestFrame.tx());
     tab.addBoolean("In Range", ()->isInRange);
   }
 
@@ -45,20 +138,14 @@ public class Vision extends SubsystemBase {
    * @param isVision - if true, look for AprilTags
    */
   public void setVisionMode(boolean isVision){
-    if (isVision) limelightTable.getEntry("pipeline").setNumber(0);
-    else limelightTable.getEntry("pipeline").setNumber(1);
+    if (isVision) pipelinePublisher.set(0);
+    else pipelinePublisher.set(1);
   }
 
   /** updates value of isInRange */
   public void alignAngle(){
-    updateValues();
-    if (xOffset > -Constants.Vision.DEGREE_ERROR && xOffset < Constants.Vision.DEGREE_ERROR){
-      isInRange = true;
-      SmartDashboard.putString("Range", "yes");
-    } else {
-      isInRange = false;
-      SmartDashboard.putString("Range", "yes");
-    }
+    double xOffset = latestFrame.tx();
+    isInRange = xOffset > -Constants.Vision.DEGREE_ERROR && xOffset < Constants.Vision.DEGREE_ERROR;
   }
 
   /** @return whether limelight is in range */
@@ -68,11 +155,18 @@ public class Vision extends SubsystemBase {
 
   /** @return value of xOffset */
   public double getOffset() {
-    return xOffset;
+    return latestFrame.tx();
+  }
+
+  /** @return most recent camera frame */
+  public VisionFrame getLatestFrame() {
+    return latestFrame;
   }
 
   @Override
   public void periodic() {
+    updateValues();
     alignAngle();
+    profilerSection.mark();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/**
+ * One Limelight camera frame
+ * @param timestamp - FPGA time the frame was captured, in seconds (server time minus pipeline and capture latency)
+ * @param hasTarget - tv
+ * @param tx - horizontal offset to the primary target in degrees
+ * @param ty - vertical offset to the primary target in degrees
+ * @param ta - primary target area in percent of the image
+ * @param primaryTagId - tid, -1 when no tag is seen
+ * @param tagCount - number of tags used for the botpose solve
+ * @param averageTagDistance - average distance to those tags in meters
+ * @param latency - pipeline plus capture latency in seconds
+ * @param pose - blue origin botpose, null when no tag is seen
+ */
+public record VisionFrame(
+  double timestamp, boolean hasTarget, double tx, double ty, double ta,
+  int primaryTagId, int tagCount, double averageTagDistance, double latency, Pose2d pose
+) {}
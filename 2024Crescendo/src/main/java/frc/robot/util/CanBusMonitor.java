@@ -0,0 +1,137 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ctre.phoenix6.CANBus;
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
+import com.revrobotics.CANSparkMax;
+
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+
+import frc.robot.Constants;
+
+/**
+ * Measures rio and CANivore bus utilization and applies every device's signal plan.
+ * <p> Subsystems hand their signal plans, the update frequencies they need plus optimizeBusUtilization() or Spark MAX
+ * frame periods, to {@link #addSignalPlan} instead of applying them in their constructors. After booting the monitor
+ * averages the utilization for {@link Constants.Can#MEASURE_TIME} seconds, applies every plan, and averages it again,
+ * so each deploy logs what the plans saved. Enabling applies the plans right away.
+ * <p> Plans block on CAN round trips, so they run on the {@link DeviceCommandQueue} worker and the after measurement
+ * only starts once the worker has applied all of them.
+ */
+public final class CanBusMonitor {
+  private static CanBusMonitor instance;
+
+  private enum Phase { BEFORE, APPLYING, AFTER, DONE }
+
+  private final List<Runnable> plans = new ArrayList<Runnable>();
+  private Phase phase = Phase.BEFORE;
+  private double phaseStart = -1;
+  private int loops = 0;
+  private int latePlans = 0;
+  private volatile boolean plansApplied = false;
+
+  private double rioUtilization = 0, canivoreUtilization = 0;
+  private double rioSum = 0, canivoreSum = 0;
+  private int samples = 0;
+  private double rioBefore = Double.NaN, canivoreBefore = Double.NaN;
+  private double rioAfter = Double.NaN, canivoreAfter = Double.NaN;
+
+  private CanBusMonitor() {
+    TelemetryPublisher telemetry = TelemetryPublisher.getInstance();
+    telemetry.addNumber("CAN/Rio Utilization", TelemetryPublisher.Tier.SLOW, () -> rioUtilization);
+    telemetry.addNumber("CAN/CANivore Utilization", TelemetryPublisher.Tier.SLOW, () -> canivoreUtilization);
+    telemetry.addNumber("CAN/Rio Before", TelemetryPublisher.Tier.ON_CHANGE, () -> rioBefore);
+    telemetry.addNumber("CAN/CANivore Before", TelemetryPublisher.Tier.ON_CHANGE, () -> canivoreBefore);
+    telemetry.addNumber("CAN/Rio After", TelemetryPublisher.Tier.ON_CHANGE, () -> rioAfter);
+    telemetry.addNumber("CAN/CANivore After", TelemetryPublisher.Tier.ON_CHANGE, () -> canivoreAfter);
+  }
+
+  /** @return the CanBusMonitor, created on first use */
+  public static CanBusMonitor getInstance() {
+    if (instance == null) instance = new CanBusMonitor();
+    return instance;
+  }
+
+  /** @param plan - sets one device's signal frequencies and turns off the rest, run once on the DeviceCommandQueue worker */
+  public void addSignalPlan(Runnable plan) {
+    if (phase == Phase.BEFORE) plans.add(plan);
+    else DeviceCommandQueue.getInstance().submit("CanBusMonitor/Late Signal Plan " + latePlans++, plan);
+  }
+
+  /**
+   * Sets the Spark MAX periodic status frames, turning off the analog, alternate encoder and duty cycle frames
+   * @param spark - Spark MAX to configure
+   * @param status0 - applied output and faults period in ms
+   * @param status1 - velocity, current and temperature period in ms
+   * @param status2 - position period in ms
+   */
+  public static void setSparkFramePeriods(CANSparkMax spark, int status0, int status1, int status2) {
+    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus0, status0);
+    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus1, status1);
+    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus2, status2);
+    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus3, Constants.Can.SPARK_DISABLED_PERIOD);
+    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus4, Constants.Can.SPARK_DISABLED_PERIOD);
+    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus5, Constants.Can.SPARK_DISABLED_PERIOD);
+    spark.setPeriodicFramePeriod(PeriodicFrame.kStatus6, Constants.Can.SPARK_DISABLED_PERIOD);
+  }
+
+  /** Samples utilization and steps the before/after measurement, call once per loop */
+  public void periodic() {
+    double now = Timer.getFPGATimestamp();
+    if (phaseStart < 0) phaseStart = now;
+    if (phase == Phase.BEFORE && DriverStation.isEnabled()) finishPhase(now);
+    if (phase == Phase.APPLYING && plansApplied) {
+      phase = Phase.AFTER;
+      phaseStart = now;
+    }
+
+    if (++loops < Constants.Can.SAMPLE_PERIOD_LOOPS) return;
+    loops = 0;
+
+    rioUtilization = RobotController.getCANStatus().percentBusUtilization * 100;
+    canivoreUtilization = CANBus.getStatus(Constants.Swerve.CANBUS).BusUtilization * 100;
+    if (phase == Phase.DONE || phase == Phase.APPLYING) return;
+
+    rioSum += rioUtilization;
+    canivoreSum += canivoreUtilization;
+    samples++;
+    if (now - phaseStart >= Constants.Can.MEASURE_TIME) finishPhase(now);
+  }
+
+  private void finishPhase(double now) {
+    double rio = samples > 0 ? rioSum / samples : Double.NaN;
+    double canivore = samples > 0 ? canivoreSum / samples : Double.NaN;
+    rioSum = canivoreSum = 0;
+    samples = 0;
+    phaseStart = now;
+
+    if (phase == Phase.BEFORE) {
+      rioBefore = rio;
+      canivoreBefore = canivore;
+      Runnable[] applying = plans.toArray(new Runnable[0]);
+      plans.clear();
+      DeviceCommandQueue.getInstance().submit("CanBusMonitor/Signal Plans", () -> {
+        for (Runnable plan : applying) {
+          try {
+            plan.run();
+          } catch (RuntimeException e) {
+            DataLogManager.log("CanBusMonitor signal plan failed: " + e.getMessage());
+          }
+        }
+        plansApplied = true;
+      });
+      phase = Phase.APPLYING;
+    } else {
+      rioAfter = rio;
+      canivoreAfter = canivore;
+      phase = Phase.DONE;
+      DataLogManager.log(String.format("CAN utilization rio %.1f%% -> %.1f%%, CANivore %.1f%% -> %.1f%%",
+        rioBefore, rioAfter, canivoreBefore, canivoreAfter));
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringArrayPublisher;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+import frc.robot.Constants;
+
+/**
+ * Follows every command from initialize to finish or interrupt through the {@link CommandScheduler} hooks.
+ * <p> Each command name gets schedule, finish and interrupt counts, the wall clock duration of its runs, and the
+ * execute cost {@link LoopProfiler} measured for it, published to /CommandProfiler/&lt;name&gt; and logged at the end
+ * of every run. Commands sharing a name, like every InstantCommand, are added up together the same way LoopProfiler
+ * times them, so name commands that need their own numbers. A command still running after its stall time, {@link Constants.CommandProfiler#STALL_TIME} unless set
+ * with {@link #setStallTime}, is logged once and listed in /CommandProfiler/Stalled until it ends. Default commands are
+ * expected to run forever and are never flagged.
+ * <p> Only commands the scheduler runs itself are seen. A command inside a group, e.g. a MovePivot that never reaches
+ * its goal in a sequence, is counted and reported stalled under the group's name, so give groups the stall time of
+ * their slowest part.
+ */
+public final class CommandProfiler {
+  private static CommandProfiler instance;
+
+  /** Totals for every command with one name, e.g. every InstantCommand, which would otherwise share one topic */
+  private final class Stats {
+    private final String name;
+    private final LoopProfiler.Section section;
+    private final TelemetryLogger.Channel channel;
+    private final DoubleArrayPublisher publisher;
+    private final double[] published = new double[6];
+    private final double[] logged = new double[3];
+
+    private int schedules = 0, finishes = 0, interrupts = 0;
+    private double lastDuration = 0, maxDuration = 0;
+    private double maxExecuteMillis = 0;
+
+    private Stats(String name) {
+      this.name = name;
+      section = LoopProfiler.getInstance().section("Command/" + name);
+      channel = TelemetryLogger.getInstance().channel("Commands/" + name, logged.length);
+      publisher = NetworkTableInstance.getDefault().getDoubleArrayTopic("/CommandProfiler/" + name).publish();
+    }
+
+    private void publish() {
+      published[0] = schedules;
+      published[1] = finishes;
+      published[2] = interrupts;
+      published[3] = lastDuration;
+      published[4] = maxDuration;
+      published[5] = maxExecuteMillis;
+      publisher.set(published);
+    }
+  }
+
+  /** One command instance and its current run, charged to the Stats of its name */
+  private final class Run {
+    private final Command command;
+    private final Stats stats;
+
+    private final double stallTime;
+    private double runStart;
+    private int executes;
+    private double executeMillis;
+    private boolean stalled;
+
+    private Run(Command command) {
+      this.command = command;
+      stallTime = stallTimes.getOrDefault(command, Constants.CommandProfiler.STALL_TIME);
+      stats = statsByName.computeIfAbsent(command.getName(), name -> {
+        Stats named = new Stats(name);
+        all.add(named);
+        return named;
+      });
+    }
+
+    private void start(double now) {
+      stats.schedules++;
+      runStart = now;
+      executes = 0;
+      executeMillis = 0;
+      stalled = false;
+      active.add(this);
+    }
+
+    private void end(double now, boolean interrupted) {
+      if (interrupted) stats.interrupts++;
+      else stats.finishes++;
+      double duration = now - runStart;
+      stats.lastDuration = duration;
+      stats.maxDuration = Math.max(stats.maxDuration, duration);
+      active.remove(this);
+
+      // duration, executes and total execute milliseconds of the run
+      stats.logged[0] = duration;
+      stats.logged[1] = executes;
+      stats.logged[2] = executeMillis;
+      stats.channel.append(stats.logged);
+      if (stalled) {
+        DataLogManager.log(String.format("Stalled command %s %s after %.2f s",
+          stats.name, interrupted ? "was interrupted" : "finished", duration));
+      }
+    }
+  }
+
+  // only running commands, removed when they end so finished instances can be collected
+  private final Map<Command, Run> runs = new IdentityHashMap<Command, Run>();
+  // weak so setting a stall time does not keep a command that is never scheduled again
+  private final Map<Command, Double> stallTimes = new WeakHashMap<Command, Double>();
+  private final Map<String, Stats> statsByName = new HashMap<String, Stats>();
+  private final List<Stats> all = new ArrayList<Stats>();
+  private final List<Run> active = new ArrayList<Run>();
+  private final List<String> stalledNames = new ArrayList<String>();
+  private final StringArrayPublisher stalledPublisher =
+    NetworkTableInstance.getDefault().getStringArrayTopic("/CommandProfiler/Stalled").publish();
+  private int loop = 0;
+
+  private CommandProfiler() {
+    // LoopProfiler has to hook execute first so its mark for this execute is already recorded
+    LoopProfiler.getInstance();
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    scheduler.onCommandInitialize(command -> {
+      Run run = new Run(command);
+      runs.put(command, run);
+      run.start(Timer.getFPGATimestamp());
+    });
+    scheduler.onCommandExecute(command -> {
+      Run run = runs.get(command);
+      if (run == null) return;
+      double millis = run.stats.section.getLastMillis();
+      run.executes++;
+      run.executeMillis += millis;
+      run.stats.maxExecuteMillis = Math.max(run.stats.maxExecuteMillis, millis);
+    });
+    scheduler.onCommandFinish(command -> end(command, false));
+    scheduler.onCommandInterrupt(command -> end(command, true));
+  }
+
+  /** @return the CommandProfiler, hooking the command scheduler on first use */
+  public static CommandProfiler getInstance() {
+    if (instance == null) instance = new CommandProfiler();
+    return instance;
+  }
+
+  private void end(Command command, boolean interrupted) {
+    Run run = runs.remove(command);
+    if (run != null) run.end(Timer.getFPGATimestamp(), interrupted);
+  }
+
+  /**
+   * @param command - command to watch, takes effect from its next run. Must be scheduled itself, not part of a group
+   * @param seconds - how long it may run before it is flagged as stalled
+   */
+  public void setStallTime(Command command, double seconds) {
+    stallTimes.put(command, seconds);
+  }
+
+  /** Checks running commands for stalls and publishes, call once per loop after the scheduler runs */
+  public void periodic() {
+    double now = Timer.getFPGATimestamp();
+    boolean changed = false;
+    for (int i = 0; i < active.size(); i++) {
+      Run running = active.get(i);
+      if (running.stalled || now - running.runStart < running.stallTime || isDefaultCommand(running.command)) continue;
+
+      running.stalled = true;
+      changed = true;
+      DataLogManager.log(String.format("Command %s has not finished after %.2f s, requires %s",
+        running.stats.name, now - running.runStart, running.command.getRequirements()));
+    }
+
+    // also catches stalled commands that just ended
+    if (changed || stalledNames.size() != countStalled()) publishStalled();
+
+    if (++loop % Constants.Profiler.PUBLISH_PERIOD_LOOPS == 0) {
+      for (int i = 0; i < all.size(); i++) {
+        all.get(i).publish();
+      }
+    }
+  }
+
+  private int countStalled() {
+    int count = 0;
+    for (int i = 0; i < active.size(); i++) {
+      if (active.get(i).stalled) count++;
+    }
+    return count;
+  }
+
+  private void publishStalled() {
+    stalledNames.clear();
+    for (int i = 0; i < active.size(); i++) {
+      if (active.get(i).stalled) stalledNames.add(active.get(i).stats.name);
+    }
+    stalledPublisher.set(stalledNames.toArray(new String[0]));
+  }
+
+  private static boolean isDefaultCommand(Command command) {
+    for (Subsystem subsystem : command.getRequirements()) {
+      if (CommandScheduler.getInstance().getDefaultCommand(subsystem) == command) return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,121 @@
+package frc.robot.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import edu.wpi.first.wpilibj.DataLogManager;
+
+/**
+ * Runs blocking device calls, like config applies and Spark MAX parameter sets, on one worker thread so the scheduler
+ * never waits on a CAN round trip.
+ * <p> Requests are keyed by what they change, e.g. "FrontLeft Drive/Neutral Mode". A request whose key is already
+ * waiting replaces the waiting one in place, so only the latest neutral mode or current limit for a device is ever sent
+ * and a burst of changes costs one apply. Requests with different keys run in the order they were first queued,
+ * except that a request submitted after a device's {@link DeviceConfigurator} future is passed over until that future
+ * completes, so a boot config can never land on top of a runtime change and silently revert it.
+ * <p> Build the config inside the request or from values captured when submitting, the request runs later on another
+ * thread.
+ */
+public final class DeviceCommandQueue {
+  private static DeviceCommandQueue instance;
+
+  private final Map<String, Request> requests = new LinkedHashMap<String, Request>();
+  private final Thread worker = new Thread(this::run, "DeviceCommandQueue");
+  private volatile int executed = 0, coalesced = 0;
+
+  private DeviceCommandQueue() {
+    worker.setDaemon(true);
+    worker.start();
+
+    TelemetryPublisher telemetry = TelemetryPublisher.getInstance();
+    telemetry.addNumber("DeviceCommandQueue/Waiting", TelemetryPublisher.Tier.ON_CHANGE, this::getWaiting);
+    telemetry.addNumber("DeviceCommandQueue/Executed", TelemetryPublisher.Tier.SLOW, () -> executed);
+    telemetry.addNumber("DeviceCommandQueue/Coalesced", TelemetryPublisher.Tier.SLOW, () -> coalesced);
+  }
+
+  /** @return the DeviceCommandQueue, created on first use */
+  public static DeviceCommandQueue getInstance() {
+    if (instance == null) instance = new DeviceCommandQueue();
+    return instance;
+  }
+
+  /**
+   * Queues a device call, replacing any waiting call with the same key
+   * @param key - device and setting the call changes
+   * @param request - blocking call to run on the worker
+   */
+  public void submit(String key, Runnable request) {
+    submit(key, null, request);
+  }
+
+  /**
+   * Queues a device call to run once the device's boot config is done, replacing any waiting call with the same key
+   * @param key - device and setting the call changes
+   * @param after - the device's configure future, or null to run as soon as possible
+   * @param request - blocking call to run on the worker
+   */
+  public synchronized void submit(String key, CompletableFuture<?> after, Runnable request) {
+    if (after != null && !after.isDone()) after.whenComplete((result, error) -> wake());
+
+    if (requests.replace(key, new Request(request, after)) != null) {
+      coalesced++;
+      return;
+    }
+    requests.put(key, new Request(request, after));
+    notifyAll();
+  }
+
+  /** @return number of calls waiting to run */
+  public synchronized int getWaiting() {
+    return requests.size();
+  }
+
+  private synchronized void wake() {
+    notifyAll();
+  }
+
+  /** @return the oldest request whose device is configured, waiting until there is one */
+  private synchronized Runnable take() throws InterruptedException {
+    while (true) {
+      Iterator<Request> iterator = requests.values().iterator();
+      while (iterator.hasNext()) {
+        Request request = iterator.next();
+        if (request.after == null || request.after.isDone()) {
+          iterator.remove();
+          return request.call;
+        }
+      }
+      wait();
+    }
+  }
+
+  private void run() {
+    while (true) {
+      Runnable request;
+      try {
+        request = take();
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      try {
+        request.run();
+      } catch (RuntimeException e) {
+        DataLogManager.log("DeviceCommandQueue request failed: " + e.getMessage());
+      }
+      executed++;
+    }
+  }
+
+  private static final class Request {
+    final Runnable call;
+    final CompletableFuture<?> after;
+
+    Request(Runnable call, CompletableFuture<?> after) {
+      this.call = call;
+      this.after = after;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package frc.robot.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.ctre.phoenix6.configs.CANcoderConfiguration;
+import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.hardware.CANcoder;
+import com.ctre.phoenix6.hardware.TalonFX;
+import com.revrobotics.REVLibError;
+
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Timer;
+
+import frc.robot.Constants;
+
+/**
+ * Applies device configs on a small thread pool so boot is not a chain of blocking CAN round trips.
+ * <p> Every device is read back first and left alone when it already has the config, which is the common case after a
+ * brownout or code restart. Devices store quantized values, so the settings this robot uses are compared within
+ * {@link Constants.DeviceConfig#TOLERANCE} rather than as serialized strings. Otherwise the config is applied, retrying up to {@link Constants.DeviceConfig#ATTEMPTS}
+ * times. Each device's time and outcome is logged, and failures are counted on the dashboard.
+ * <p> Configs are serialized when the task runs, so do not change a config object after handing it over. Runtime
+ * changes to a device go through {@link DeviceCommandQueue#submit(String, CompletableFuture, Runnable)} with the future
+ * returned here, so they are only sent once the full config has landed and it cannot revert them.
+ */
+public final class DeviceConfigurator {
+  private static DeviceConfigurator instance;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(Constants.DeviceConfig.THREADS, runnable -> {
+    Thread thread = new Thread(runnable, "DeviceConfigurator");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicInteger pending = new AtomicInteger(), failures = new AtomicInteger(), skipped = new AtomicInteger();
+  private final double startTime = Timer.getFPGATimestamp();
+
+  private DeviceConfigurator() {
+    TelemetryPublisher telemetry = TelemetryPublisher.getInstance();
+    telemetry.addNumber("Config/Pending", TelemetryPublisher.Tier.ON_CHANGE, pending::get);
+    telemetry.addNumber("Config/Failures", TelemetryPublisher.Tier.ON_CHANGE, failures::get);
+    telemetry.addNumber("Config/Skipped", TelemetryPublisher.Tier.ON_CHANGE, skipped::get);
+  }
+
+  /** @return the DeviceConfigurator, created on first use */
+  public static DeviceConfigurator getInstance() {
+    if (instance == null) instance = new DeviceConfigurator();
+    return instance;
+  }
+
+  /** @return whether every submitted device has finished, successfully or not */
+  public boolean isDone() {
+    return pending.get() == 0;
+  }
+
+  /** @return devices that could not be configured */
+  public int getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * @param errors - results of a group of REV calls
+   * @return whether all of them succeeded
+   */
+  public static boolean isOk(REVLibError... errors) {
+    for (REVLibError error : errors) {
+      if (error != REVLibError.kOk) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Configures a TalonFX, skipping the apply when the motor already has the config
+   * @param name - device name for the log
+   * @param motor - TalonFX to configure
+   * @param config - full configuration
+   * @return completes with whether the motor has the config
+   */
+  public CompletableFuture<Boolean> configure(String name, TalonFX motor, TalonFXConfiguration config) {
+    return configure(name, () -> {
+      TalonFXConfiguration current = new TalonFXConfiguration();
+      return motor.getConfigurator().refresh(current, Constants.DeviceConfig.TIMEOUT).isOK() && matches(current, config);
+    }, () -> motor.getConfigurator().apply(config, Constants.DeviceConfig.TIMEOUT).isOK());
+  }
+
+  /**
+   * Configures a CANcoder, skipping the apply when the encoder already has the config
+   * @param name - device name for the log
+   * @param encoder - CANcoder to configure
+   * @param config - full configuration
+   * @return completes with whether the encoder has the config
+   */
+  public CompletableFuture<Boolean> configure(String name, CANcoder encoder, CANcoderConfiguration config) {
+    return configure(name, () -> {
+      CANcoderConfiguration current = new CANcoderConfiguration();
+      return encoder.getConfigurator().refresh(current, Constants.DeviceConfig.TIMEOUT).isOK() && matches(current, config);
+    }, () -> encoder.getConfigurator().apply(config, Constants.DeviceConfig.TIMEOUT).isOK());
+  }
+
+  /**
+   * Configures any device
+   * @param name - device name for the log
+   * @param upToDate - reads the device back, true when it already has the config
+   * @param apply - one attempt at applying the config, true on success
+   * @return completes with whether the device has the config
+   */
+  public CompletableFuture<Boolean> configure(String name, BooleanSupplier upToDate, BooleanSupplier apply) {
+    pending.incrementAndGet();
+    return CompletableFuture.supplyAsync(() -> {
+      double start = Timer.getFPGATimestamp();
+      boolean configured = false;
+      int attempts = 0;
+      try {
+        if (upToDate.getAsBoolean()) {
+          skipped.incrementAndGet();
+          log(name + " already configured, checked in " + milliseconds(start));
+          return true;
+        }
+
+        while (!configured && attempts < Constants.DeviceConfig.ATTEMPTS) {
+          attempts++;
+          configured = apply.getAsBoolean();
+        }
+      } catch (RuntimeException e) {
+        log(name + " threw while configuring: " + e.getMessage());
+      }
+
+      if (configured) log(name + " configured in " + milliseconds(start) + ", " + attempts + " attempt(s)");
+      else {
+        failures.incrementAndGet();
+        log(name + " FAILED to configure after " + attempts + " attempt(s), " + milliseconds(start));
+      }
+      return configured;
+    }, executor).whenComplete((configured, error) -> {
+      if (pending.decrementAndGet() == 0) {
+        log("Finished every submitted device " + milliseconds(startTime) + " after startup, " + failures.get() + " failure(s)");
+      }
+    });
+  }
+
+  /**
+   * @param current - config read back from the motor
+   * @param config - config to apply
+   * @return whether gains, output, current limits, feedback, Motion Magic and wrapping match
+   */
+  static boolean matches(TalonFXConfiguration current, TalonFXConfiguration config) {
+    return close(current.Slot0.kP, config.Slot0.kP) && close(current.Slot0.kI, config.Slot0.kI)
+      && close(current.Slot0.kD, config.Slot0.kD) && close(current.Slot0.kS, config.Slot0.kS)
+      && close(current.Slot0.kV, config.Slot0.kV) && close(current.Slot0.kA, config.Slot0.kA)
+      && close(current.Slot0.kG, config.Slot0.kG)
+      && close(current.Slot1.kP, config.Slot1.kP) && close(current.Slot1.kI, config.Slot1.kI)
+      && close(current.Slot1.kD, config.Slot1.kD) && close(current.Slot1.kS, config.Slot1.kS)
+      && close(current.Slot1.kV, config.Slot1.kV) && close(current.Slot1.kA, config.Slot1.kA)
+      && close(current.Slot1.kG, config.Slot1.kG)
+      && current.MotorOutput.Inverted == config.MotorOutput.Inverted
+      && current.MotorOutput.NeutralMode == config.MotorOutput.NeutralMode
+      && current.CurrentLimits.StatorCurrentLimitEnable == config.CurrentLimits.StatorCurrentLimitEnable
+      && close(current.CurrentLimits.StatorCurrentLimit, config.CurrentLimits.StatorCurrentLimit)
+      && current.CurrentLimits.SupplyCurrentLimitEnable == config.CurrentLimits.SupplyCurrentLimitEnable
+      && close(current.CurrentLimits.SupplyCurrentLimit, config.CurrentLimits.SupplyCurrentLimit)
+      && current.Feedback.FeedbackSensorSource == config.Feedback.FeedbackSensorSource
+      && current.Feedback.FeedbackRemoteSensorID == config.Feedback.FeedbackRemoteSensorID
+      && close(current.Feedback.SensorToMechanismRatio, config.Feedback.SensorToMechanismRatio)
+      && close(current.MotionMagic.MotionMagicCruiseVelocity, config.MotionMagic.MotionMagicCruiseVelocity)
+      && close(current.MotionMagic.MotionMagicAcceleration, config.MotionMagic.MotionMagicAcceleration)
+      && close(current.MotionMagic.MotionMagicJerk, config.MotionMagic.MotionMagicJerk)
+      && current.ClosedLoopGeneral.ContinuousWrap == config.ClosedLoopGeneral.ContinuousWrap;
+  }
+
+  /**
+   * @param current - config read back from the encoder
+   * @param config - config to apply
+   * @return whether the range, direction and magnet offset match
+   */
+  static boolean matches(CANcoderConfiguration current, CANcoderConfiguration config) {
+    return current.MagnetSensor.AbsoluteSensorRange == config.MagnetSensor.AbsoluteSensorRange
+      && current.MagnetSensor.SensorDirection == config.MagnetSensor.SensorDirection
+      && close(current.MagnetSensor.MagnetOffset, config.MagnetSensor.MagnetOffset);
+  }
+
+  private static boolean close(double current, double desired) {
+    return Math.abs(current - desired) <= Constants.DeviceConfig.TOLERANCE * Math.max(1, Math.abs(desired));
+  }
+
+  private static String milliseconds(double since) {
+    return String.format("%.0fms", (Timer.getFPGATimestamp() - since) * 1000);
+  }
+
+  private static void log(String message) {
+    DataLogManager.log("DeviceConfigurator: " + message);
+  }
+}
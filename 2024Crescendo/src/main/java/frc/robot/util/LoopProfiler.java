@@ -0,0 +1,170 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+import frc.robot.Constants;
+
+/**
+ * Times every subsystem periodic() and command execute() inside {@link CommandScheduler#run()}.
+ * <p> The scheduler runs subsystems and then commands back to back, so each {@link Section#mark()} is charged the time
+ * since the previous mark. Subsystems mark at the end of periodic(), commands are marked from the scheduler's execute
+ * hook, which means a command's time also covers the button polling or isFinished() that ran just before it.
+ * <p> Samples go into fixed nanoTime ring buffers. p50/p99/max are published to NetworkTables at a low rate, and every
+ * loop overrun dumps the breakdown of the loop that overran to the log.
+ */
+public final class LoopProfiler {
+  private static LoopProfiler instance;
+
+  /** One timed piece of the loop */
+  public final class Section {
+    private final String name;
+    private final long[] samples = new long[Constants.Profiler.SAMPLE_COUNT];
+    private int next = 0, count = 0;
+    private long lastNanos = 0, lastLoop = -1;
+    private final DoubleArrayPublisher publisher;
+    private final double[] published = new double[3];
+
+    private Section(String name) {
+      this.name = name;
+      publisher = NetworkTableInstance.getDefault().getDoubleArrayTopic("/LoopProfiler/" + name).publish();
+      sections.add(this);
+    }
+
+    /** Charges the time since the previous mark in this loop to this section */
+    public void mark() {
+      long now = System.nanoTime();
+      record(now - lastMark);
+      lastMark = now;
+    }
+
+    private void record(long nanos) {
+      samples[next] = nanos;
+      next = (next + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+      lastNanos = nanos;
+      lastLoop = loop;
+    }
+
+    /** @return milliseconds charged to this section by its last mark */
+    public double getLastMillis() {
+      return lastNanos / 1e6;
+    }
+
+    /** @return the given percentile of the recorded samples in milliseconds */
+    private double percentile(double fraction) {
+      if (count == 0) return 0;
+      return scratch[(int) ((count - 1) * fraction)] / 1e6;
+    }
+
+    private void sortIntoScratch() {
+      System.arraycopy(samples, 0, scratch, 0, count);
+      Arrays.sort(scratch, 0, count);
+    }
+
+    private void publish() {
+      sortIntoScratch();
+      published[0] = percentile(0.5);
+      published[1] = percentile(0.99);
+      published[2] = percentile(1.0);
+      publisher.set(published);
+    }
+  }
+
+  private final List<Section> sections = new ArrayList<Section>();
+  private final Map<String, Section> sectionsByName = new HashMap<String, Section>();
+  // keyed by command name so instances that ended are not kept, like section() every instance with a name shares one
+  private final Map<String, Section> commandSections = new HashMap<String, Section>();
+  private final long[] scratch = new long[Constants.Profiler.SAMPLE_COUNT];
+
+  private final Section schedulerSection, robotPeriodicSection;
+  private long loop = 0, loopStart = 0, loopEnd = 0, lastMark = 0;
+
+  private LoopProfiler() {
+    schedulerSection = section("Scheduler");
+    robotPeriodicSection = section("robotPeriodic");
+
+    CommandScheduler.getInstance().onCommandExecute(command -> {
+      Section section = commandSections.get(command.getName());
+      if (section == null) {
+        section = section("Command/" + command.getName());
+        commandSections.put(command.getName(), section);
+      }
+      section.mark();
+    });
+  }
+
+  /** @return the profiler, hooking the command scheduler on first use */
+  public static LoopProfiler getInstance() {
+    if (instance == null) instance = new LoopProfiler();
+    return instance;
+  }
+
+  /**
+   * @param name - name shown on the dashboard and in overrun dumps
+   * @return section with that name, created on first use
+   */
+  public Section section(String name) {
+    Section section = sectionsByName.get(name);
+    if (section == null) {
+      section = new Section(name);
+      sectionsByName.put(name, section);
+    }
+    return section;
+  }
+
+  /** Call at the start of robotPeriodic(), before running the scheduler */
+  public void startLoop() {
+    long now = System.nanoTime();
+    if (loop > 0) {
+      double period = (now - loopStart) / 1e9;
+      if (period > Constants.Profiler.LOOP_BUDGET * Constants.Profiler.OVERRUN_TOLERANCE) {
+        dumpOverrun(period, (now - loopEnd) / 1e9);
+      }
+    }
+    loopStart = now;
+    lastMark = now;
+  }
+
+  /** Call at the end of robotPeriodic(), after running the scheduler */
+  public void endLoop() {
+    schedulerSection.mark();
+
+    long now = System.nanoTime();
+    robotPeriodicSection.record(now - loopStart);
+    loopEnd = now;
+
+    if (loop % Constants.Profiler.PUBLISH_PERIOD_LOOPS == 0) {
+      for (int i = 0; i < sections.size(); i++) {
+        sections.get(i).publish();
+      }
+    }
+    loop++;
+  }
+
+  /**
+   * Logs what the last loop spent its time on
+   * @param period - seconds between the starts of the last two loops
+   * @param outside - seconds between the end of robotPeriodic() and the next loop (mode periodic, dashboards, LiveWindow)
+   */
+  private void dumpOverrun(double period, double outside) {
+    StringBuilder message = new StringBuilder("Loop overrun: ")
+      .append(String.format("%.2f ms, %.2f ms outside robotPeriodic", period * 1e3, outside * 1e3));
+    for (Section section : sections) {
+      if (section.lastLoop != loop - 1) continue;
+      section.sortIntoScratch();
+      message.append(String.format("%n  %s: %.3f ms (p50 %.3f, p99 %.3f, max %.3f)",
+        section.name, section.lastNanos / 1e6, section.percentile(0.5), section.percentile(0.99), section.percentile(1.0)));
+    }
+    DataLogManager.log(message.toString());
+  }
+}
@@ -0,0 +1,123 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.wpi.first.wpilibj.Filesystem;
+
+/**
+ * PathPlanner's navgrid.json as a bitset, with the distance from every cell to the nearest obstacle precomputed.
+ * <p> Cells are indexed row major, index = row * columns + column, with rows along field y and columns along field x.
+ */
+public class NavGrid {
+  public final int rows, columns;
+  public final double nodeSize;
+
+  private final long[] obstacles;
+  private final float[] obstacleDistance;
+
+  /**
+   * Loads a navgrid from the deploy directory
+   * @param deployPath - path relative to the deploy directory, e.g. "pathplanner/navgrid.json"
+   * @throws IOException when the file is missing or malformed
+   */
+  public NavGrid(String deployPath) throws IOException {
+    JsonNode json = new ObjectMapper().readTree(new File(Filesystem.getDeployDirectory(), deployPath));
+    JsonNode grid = json.get("grid");
+    if (grid == null || grid.size() == 0) throw new IOException(deployPath + " has no grid");
+
+    nodeSize = json.get("nodeSizeMeters").asDouble();
+    rows = grid.size();
+    columns = grid.get(0).size();
+    obstacles = new long[(rows * columns + 63) / 64];
+    obstacleDistance = new float[rows * columns];
+
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        if (grid.get(row).get(column).asBoolean()) {
+          int index = index(row, column);
+          obstacles[index >> 6] |= 1L << index;
+        }
+      }
+    }
+    computeObstacleDistance();
+  }
+
+  /** Two pass chamfer distance transform, in meters, with 1 and sqrt(2) cell steps */
+  private void computeObstacleDistance() {
+    float straight = (float) nodeSize, diagonal = (float) (nodeSize * Math.sqrt(2));
+    for (int i = 0; i < obstacleDistance.length; i++) {
+      obstacleDistance[i] = isObstacle(i) ? 0 : Float.MAX_VALUE;
+    }
+
+    // forward pass from the top left neighbors
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        int index = index(row, column);
+        float distance = obstacleDistance[index];
+        if (column > 0) distance = Math.min(distance, obstacleDistance[index - 1] + straight);
+        if (row > 0) {
+          distance = Math.min(distance, obstacleDistance[index - columns] + straight);
+          if (column > 0) distance = Math.min(distance, obstacleDistance[index - columns - 1] + diagonal);
+          if (column < columns - 1) distance = Math.min(distance, obstacleDistance[index - columns + 1] + diagonal);
+        }
+        obstacleDistance[index] = distance;
+      }
+    }
+
+    // backward pass from the bottom right neighbors
+    for (int row = rows - 1; row >= 0; row--) {
+      for (int column = columns - 1; column >= 0; column--) {
+        int index = index(row, column);
+        float distance = obstacleDistance[index];
+        if (column < columns - 1) distance = Math.min(distance, obstacleDistance[index + 1] + straight);
+        if (row < rows - 1) {
+          distance = Math.min(distance, obstacleDistance[index + columns] + straight);
+          if (column < columns - 1) distance = Math.min(distance, obstacleDistance[index + columns + 1] + diagonal);
+          if (column > 0) distance = Math.min(distance, obstacleDistance[index + columns - 1] + diagonal);
+        }
+        obstacleDistance[index] = distance;
+      }
+    }
+  }
+
+  /** @return cell index */
+  public int index(int row, int column) {
+    return row * columns + column;
+  }
+
+  /** @return whether the cell is marked as an obstacle */
+  public boolean isObstacle(int index) {
+    return (obstacles[index >> 6] & (1L << index)) != 0;
+  }
+
+  /** @return meters from the cell to the nearest obstacle cell, 0 for obstacles */
+  public double obstacleDistance(int index) {
+    return obstacleDistance[index];
+  }
+
+  /** @return number of cells */
+  public int size() {
+    return rows * columns;
+  }
+
+  /** @return cell containing the field position, clamped to the grid */
+  public int cellAt(double x, double y) {
+    int column = Math.max(0, Math.min(columns - 1, (int) (x / nodeSize)));
+    int row = Math.max(0, Math.min(rows - 1, (int) (y / nodeSize)));
+    return index(row, column);
+  }
+
+  /** @return field x of the cell center in meters */
+  public double centerX(int index) {
+    return (index % columns + 0.5) * nodeSize;
+  }
+
+  /** @return field y of the cell center in meters */
+  public double centerY(int index) {
+    return (index / columns + 0.5) * nodeSize;
+  }
+}
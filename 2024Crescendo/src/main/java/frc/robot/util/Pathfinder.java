@@ -0,0 +1,260 @@
+package frc.robot.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pathplanner.lib.path.GoalEndState;
+import com.pathplanner.lib.path.PathConstraints;
+import com.pathplanner.lib.path.PathPlannerPath;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DataLogManager;
+
+import frc.robot.Constants;
+
+/**
+ * A* over the PathPlanner navgrid, returning smoothed paths the AutoBuilder can follow.
+ * <p> Cells closer to an obstacle than the robot radius are blocked, and cells inside the clearance margin cost extra
+ * so paths keep away from walls when they can. All search state is allocated once, a query on the 56x28 field grid
+ * takes well under a millisecond. Only call from the main robot thread.
+ */
+public class Pathfinder {
+  private static final int[] ROW_STEPS = {-1, -1, -1, 0, 0, 1, 1, 1};
+  private static final int[] COLUMN_STEPS = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+  private final NavGrid grid;
+
+  // search state reused between queries, a cell is only valid when its visit stamp matches the current query
+  private final float[] costs;
+  private final int[] parents;
+  private final int[] visits;
+  private final boolean[] closed;
+  private int query = 0;
+
+  // binary min heap of cells keyed by estimated total cost
+  private final int[] heap;
+  private final float[] heapKeys;
+  private int heapSize;
+
+  private double lastQuerySeconds = 0;
+
+  /**
+   * Loads the navgrid and precomputes its distance field
+   * @throws IOException when navgrid.json cannot be read
+   */
+  public Pathfinder() throws IOException {
+    grid = new NavGrid(Constants.Pathfinding.NAVGRID_PATH);
+    costs = new float[grid.size()];
+    parents = new int[grid.size()];
+    visits = new int[grid.size()];
+    closed = new boolean[grid.size()];
+    heap = new int[grid.size() * ROW_STEPS.length];
+    heapKeys = new float[heap.length];
+
+    TelemetryPublisher.getInstance().addNumber("Pathfinder/Last Query Seconds", TelemetryPublisher.Tier.ON_CHANGE,
+      this::getLastQuerySeconds);
+  }
+
+  /**
+   * Straight path ignoring obstacles, for when there is no navgrid to plan around
+   * @param start - current robot pose
+   * @param target - pose to end at, the robot turns to its rotation along the way
+   * @return path from start to target
+   */
+  public static PathPlannerPath directPath(Pose2d start, Pose2d target) {
+    var heading = target.getTranslation().minus(start.getTranslation()).getAngle();
+    return toPath(List.of(new Pose2d(start.getTranslation(), heading), new Pose2d(target.getTranslation(), heading)), target);
+  }
+
+  /** @return seconds the last {@link #findPath} took */
+  public double getLastQuerySeconds() {
+    return lastQuerySeconds;
+  }
+
+  /**
+   * @param start - current robot pose
+   * @param target - pose to end at, the robot turns to its rotation along the way
+   * @return path from start to target, or null when no path exists
+   */
+  public PathPlannerPath findPath(Pose2d start, Pose2d target) {
+    long startTime = System.nanoTime();
+
+    int startCell = nearestFree(grid.cellAt(start.getX(), start.getY()));
+    int goalCell = nearestFree(grid.cellAt(target.getX(), target.getY()));
+    if (startCell < 0 || goalCell < 0 || !search(startCell, goalCell)) {
+      lastQuerySeconds = (System.nanoTime() - startTime) / 1e9;
+      DataLogManager.log("Pathfinder found no path from " + start + " to " + target);
+      return null;
+    }
+
+    // walk back from the goal, keeping only the cells where the line of sight breaks
+    List<Translation2d> waypoints = new ArrayList<Translation2d>();
+    waypoints.add(target.getTranslation());
+    Translation2d anchor = target.getTranslation();
+    int previous = goalCell;
+    for (int cell = parents[goalCell]; cell != startCell; cell = parents[cell]) {
+      Translation2d point = new Translation2d(grid.centerX(cell), grid.centerY(cell));
+      if (!lineOfSight(anchor, point)) {
+        anchor = new Translation2d(grid.centerX(previous), grid.centerY(previous));
+        waypoints.add(anchor);
+      }
+      previous = cell;
+    }
+    if (!lineOfSight(anchor, start.getTranslation()) && previous != goalCell) {
+      waypoints.add(new Translation2d(grid.centerX(previous), grid.centerY(previous)));
+    }
+    waypoints.add(start.getTranslation());
+
+    // bezier poses are headed along the direction of travel
+    List<Pose2d> poses = new ArrayList<Pose2d>();
+    for (int i = waypoints.size() - 1; i >= 0; i--) {
+      Translation2d point = waypoints.get(i);
+      Translation2d next = i > 0 ? waypoints.get(i - 1) : point.plus(point.minus(waypoints.get(i + 1)));
+      poses.add(new Pose2d(point, next.minus(point).getAngle()));
+    }
+
+    PathPlannerPath path = toPath(poses, target);
+
+    lastQuerySeconds = (System.nanoTime() - startTime) / 1e9;
+    return path;
+  }
+
+  /** @return path through the bezier poses with the auto constraints, ending at the target rotation */
+  private static PathPlannerPath toPath(List<Pose2d> poses, Pose2d target) {
+    PathPlannerPath path = new PathPlannerPath(
+      PathPlannerPath.bezierFromPoses(poses),
+      new PathConstraints(
+        Constants.Auto.kMaxSpeedMetersPerSecond, Constants.Auto.kMaxAccelerationMetersPerSecondSquared,
+        Math.toRadians(Constants.Auto.kMaxAngularSpeedDegreesPerSecond),
+        Math.toRadians(Constants.Auto.kMaxAngularSpeedDegreesPerSecondSquared)),
+      new GoalEndState(0, target.getRotation()));
+    // already in blue origin field coordinates for the right alliance
+    path.preventFlipping = true;
+    return path;
+  }
+
+  /** @return whether the cell is far enough from obstacles for the robot */
+  private boolean isFree(int cell) {
+    return grid.obstacleDistance(cell) >= Constants.Pathfinding.ROBOT_RADIUS;
+  }
+
+  /** @return closest free cell to the given one, or -1 if the grid has none */
+  private int nearestFree(int cell) {
+    if (isFree(cell)) return cell;
+    double x = grid.centerX(cell), y = grid.centerY(cell);
+    int nearest = -1;
+    double nearestDistance = Double.MAX_VALUE;
+    for (int i = 0; i < grid.size(); i++) {
+      if (!isFree(i)) continue;
+      double distance = Math.hypot(grid.centerX(i) - x, grid.centerY(i) - y);
+      if (distance < nearestDistance) {
+        nearest = i;
+        nearestDistance = distance;
+      }
+    }
+    return nearest;
+  }
+
+  /** @return whether a straight line between the points stays on free cells, sampled every quarter cell */
+  private boolean lineOfSight(Translation2d from, Translation2d to) {
+    double length = from.getDistance(to);
+    int steps = (int) Math.ceil(length / (grid.nodeSize / 4));
+    for (int i = 0; i <= steps; i++) {
+      double t = steps == 0 ? 0 : (double) i / steps;
+      double x = from.getX() + (to.getX() - from.getX()) * t;
+      double y = from.getY() + (to.getY() - from.getY()) * t;
+      if (!isFree(grid.cellAt(x, y))) return false;
+    }
+    return true;
+  }
+
+  /** @return whether the goal was reached, filling parents */
+  private boolean search(int startCell, int goalCell) {
+    query++;
+    heapSize = 0;
+    visit(startCell, 0, startCell);
+    push(startCell, heuristic(startCell, goalCell));
+
+    while (heapSize > 0) {
+      int cell = pop();
+      if (closed[cell]) continue;
+      if (cell == goalCell) return true;
+      closed[cell] = true;
+
+      int row = cell / grid.columns, column = cell % grid.columns;
+      for (int i = 0; i < ROW_STEPS.length; i++) {
+        int nextRow = row + ROW_STEPS[i], nextColumn = column + COLUMN_STEPS[i];
+        if (nextRow < 0 || nextRow >= grid.rows || nextColumn < 0 || nextColumn >= grid.columns) continue;
+
+        int next = grid.index(nextRow, nextColumn);
+        if (!isFree(next)) continue;
+        if (visits[next] == query && closed[next]) continue;
+
+        boolean diagonal = ROW_STEPS[i] != 0 && COLUMN_STEPS[i] != 0;
+        // no cutting the corner of a blocked cell
+        if (diagonal && (!isFree(grid.index(row, nextColumn)) || !isFree(grid.index(nextRow, column)))) continue;
+
+        float cost = costs[cell] + (float) ((diagonal ? Math.sqrt(2) : 1) * grid.nodeSize + clearancePenalty(next));
+        if (visits[next] != query || cost < costs[next]) {
+          visit(next, cost, cell);
+          push(next, cost + heuristic(next, goalCell));
+        }
+      }
+    }
+    return false;
+  }
+
+  private void visit(int cell, float cost, int parent) {
+    if (visits[cell] != query) closed[cell] = false;
+    visits[cell] = query;
+    costs[cell] = cost;
+    parents[cell] = parent;
+  }
+
+  /** @return extra cost for passing closer to an obstacle than the clearance margin */
+  private double clearancePenalty(int cell) {
+    double shortfall = Constants.Pathfinding.CLEARANCE - grid.obstacleDistance(cell);
+    return shortfall > 0 ? shortfall * Constants.Pathfinding.CLEARANCE_WEIGHT : 0;
+  }
+
+  /** @return octile distance, admissible for 8 connected moves */
+  private float heuristic(int cell, int goalCell) {
+    int rows = Math.abs(cell / grid.columns - goalCell / grid.columns);
+    int columns = Math.abs(cell % grid.columns - goalCell % grid.columns);
+    return (float) ((Math.max(rows, columns) + (Math.sqrt(2) - 1) * Math.min(rows, columns)) * grid.nodeSize);
+  }
+
+  private void push(int cell, float key) {
+    int i = heapSize++;
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (heapKeys[parent] <= key) break;
+      heap[i] = heap[parent];
+      heapKeys[i] = heapKeys[parent];
+      i = parent;
+    }
+    heap[i] = cell;
+    heapKeys[i] = key;
+  }
+
+  private int pop() {
+    int top = heap[0];
+    int last = heap[--heapSize];
+    float lastKey = heapKeys[heapSize];
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) break;
+      if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+      if (heapKeys[child] >= lastKey) break;
+      heap[i] = heap[child];
+      heapKeys[i] = heapKeys[child];
+      i = child;
+    }
+    heap[i] = last;
+    heapKeys[i] = lastKey;
+    return top;
+  }
+}
@@ -0,0 +1,187 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+import edu.wpi.first.wpilibj.PowerDistribution;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.PowerDistribution.ModuleType;
+
+import frc.robot.Constants;
+
+/**
+ * Splits the current the battery can deliver without browning out between the subsystems, by priority for the
+ * current {@link Mode}.
+ * <p> The battery is modelled as an open circuit voltage behind a resistance, estimated from the voltage drop across
+ * current steps. The budget is the total current that keeps the voltage above {@link Constants.Power#MIN_VOLTAGE},
+ * minus a reserve for the loads that are not managed. Every load gets its minimum, scaled down only when the budget
+ * cannot cover them all, and what is left goes to the highest priority loads first, up to their maximum. If the
+ * voltage still dips the whole budget backs off.
+ * <p> Limits are supply current limits per motor. Lowered limits are sent right away, raised ones at most every
+ * {@link Constants.Power#RAISE_PERIOD} seconds so a noisy budget does not flood the CAN bus.
+ */
+public final class PowerManager {
+  private static PowerManager instance;
+
+  /** What the robot is doing, picks the load priorities */
+  public enum Mode {
+    /** driving and intaking */
+    DRIVE,
+    /** spinning up and feeding a shot */
+    SCORE,
+    /** endgame climb */
+    CLIMB
+  }
+
+  /** One group of motors sharing a limit */
+  private final class Load {
+    private final int motors;
+    private final double minAmps, maxAmps;
+    private final int[] priorities;
+    private final DoubleConsumer applier;
+    private double allocated, applied = Double.NaN, lastRaise = 0;
+
+    private Load(int motors, double minAmps, double maxAmps, int[] priorities, DoubleConsumer applier) {
+      this.motors = motors;
+      this.minAmps = minAmps;
+      this.maxAmps = maxAmps;
+      this.priorities = priorities;
+      this.applier = applier;
+    }
+
+    private void apply(double now) {
+      if (!Double.isNaN(applied) && Math.abs(allocated - applied) < Constants.Power.LIMIT_HYSTERESIS) return;
+      if (allocated > applied && now - lastRaise < Constants.Power.RAISE_PERIOD) return;
+
+      if (allocated > applied) lastRaise = now;
+      applied = allocated;
+      applier.accept(applied);
+    }
+  }
+
+  private final List<Load> loads = new ArrayList<Load>();
+  private Load[] byPriority = new Load[0];
+  private final PowerDistribution pdh = new PowerDistribution(Constants.Power.PDH_ID, ModuleType.kRev);
+
+  private Mode mode = Mode.DRIVE;
+  private boolean sorted = false;
+  private double resistance = Constants.Power.NOMINAL_RESISTANCE;
+  private double lastVoltage = Double.NaN, lastCurrent = Double.NaN;
+  private double scale = 1, budget = 0;
+
+  private PowerManager() {
+    TelemetryPublisher telemetry = TelemetryPublisher.getInstance();
+    telemetry.addNumber("Power/Budget", TelemetryPublisher.Tier.SLOW, () -> budget);
+    telemetry.addNumber("Power/Resistance", TelemetryPublisher.Tier.SLOW, () -> resistance);
+    telemetry.addNumber("Power/Scale", TelemetryPublisher.Tier.ON_CHANGE, () -> scale);
+  }
+
+  /** @return the PowerManager, created on first use */
+  public static PowerManager getInstance() {
+    if (instance == null) instance = new PowerManager();
+    return instance;
+  }
+
+  /**
+   * Adds a load to the budget
+   * @param name - shown under /Telemetry/Power
+   * @param motors - number of motors sharing the limit
+   * @param minAmps - per motor limit that is always granted
+   * @param maxAmps - per motor limit that is never exceeded
+   * @param priorities - priority in each {@link Mode}, indexed by ordinal, higher is served first
+   * @param applier - sets the per motor supply current limit in amps, only called when it changes
+   */
+  public void register(String name, int motors, double minAmps, double maxAmps, int[] priorities, DoubleConsumer applier) {
+    Load load = new Load(motors, minAmps, maxAmps, priorities, applier);
+    loads.add(load);
+    sorted = false;
+    TelemetryPublisher.getInstance().addNumber("Power/" + name + " Limit", TelemetryPublisher.Tier.ON_CHANGE, () -> load.applied);
+  }
+
+  /** @param mode - what the robot is doing now */
+  public void setMode(Mode mode) {
+    if (this.mode == mode) return;
+    this.mode = mode;
+    sorted = false;
+  }
+
+  /** @return current mode */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /** @return total amps the managed loads may draw */
+  public double getBudget() {
+    return budget;
+  }
+
+  /** Recomputes the budget and sends changed limits, call once per loop */
+  public void periodic() {
+    double voltage = RobotController.getBatteryVoltage();
+    double current = pdh.getTotalCurrent();
+    estimateResistance(voltage, current);
+
+    // back off quickly while the model is too optimistic, recover slowly once it is not
+    if (voltage < Constants.Power.MIN_VOLTAGE) scale = Math.max(Constants.Power.MIN_SCALE, scale * Constants.Power.BACKOFF);
+    else scale = Math.min(1, scale + Constants.Power.RECOVERY);
+
+    double openCircuitVoltage = voltage + current * resistance;
+    double total = Math.min(Constants.Power.MAX_TOTAL_CURRENT, (openCircuitVoltage - Constants.Power.MIN_VOLTAGE) / resistance);
+    budget = Math.max(0, total * scale - Constants.Power.UNMANAGED_RESERVE);
+
+    allocate();
+    double now = Timer.getFPGATimestamp();
+    for (int i = 0; i < byPriority.length; i++) {
+      byPriority[i].apply(now);
+    }
+  }
+
+  /** Updates the resistance from the voltage drop across a large enough current step */
+  private void estimateResistance(double voltage, double current) {
+    double step = current - lastCurrent;
+    if (Math.abs(step) >= Constants.Power.RESISTANCE_STEP) {
+      double estimate = Math.max(Constants.Power.MIN_RESISTANCE,
+        Math.min(Constants.Power.MAX_RESISTANCE, (lastVoltage - voltage) / step));
+      resistance += (estimate - resistance) * Constants.Power.RESISTANCE_FILTER;
+    }
+    lastVoltage = voltage;
+    lastCurrent = current;
+  }
+
+  private void allocate() {
+    if (!sorted) sortLoads();
+
+    // minimums first, scaled down together if the budget cannot even cover those
+    double minimums = 0;
+    for (int i = 0; i < byPriority.length; i++) {
+      minimums += byPriority[i].minAmps * byPriority[i].motors;
+    }
+    double minimumScale = minimums > budget ? Math.max(Constants.Power.MIN_SCALE, budget / minimums) : 1;
+    double remaining = Math.max(0, budget - minimums);
+
+    for (int i = 0; i < byPriority.length; i++) {
+      Load load = byPriority[i];
+      double extra = Math.min(remaining, (load.maxAmps - load.minAmps) * load.motors);
+      remaining -= extra;
+      load.allocated = load.minAmps * minimumScale + extra / load.motors;
+    }
+  }
+
+  /** Insertion sort by priority in the current mode, stable so ties keep registration order */
+  private void sortLoads() {
+    byPriority = loads.toArray(new Load[0]);
+    int index = mode.ordinal();
+    for (int i = 1; i < byPriority.length; i++) {
+      Load load = byPriority[i];
+      int j = i - 1;
+      while (j >= 0 && byPriority[j].priorities[index] < load.priorities[index]) {
+        byPriority[j + 1] = byPriority[j];
+        j--;
+      }
+      byPriority[j + 1] = load;
+    }
+    sorted = true;
+  }
+}
@@ -0,0 +1,80 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.Constants;
+
+/**
+ * Aims while driving: the note keeps the robot's field velocity after it leaves, so the shot is aimed at a virtual
+ * target moved against that velocity by the note's time of flight.
+ * <p> Time of flight depends on the distance to the virtual target, so the target is iterated to a fixed point, which
+ * converges in a few steps at robot speeds. The solution is written into a reused {@link Solution}, so solving every
+ * loop does not allocate.
+ */
+public class ShotSolver {
+  /** Output of {@link ShotSolver#solve} */
+  public static class Solution {
+    /** field heading to face in radians, and its rate of change in rad/s to feed forward */
+    public double headingRadians, headingVelocity;
+    /** meters from the robot to the virtual target */
+    public double distance;
+    /** seconds the note is in the air */
+    public double timeOfFlight;
+    /** shooter velocities and pivot angle for distance, from the shot table */
+    public final ShotTable.Shot shot = new ShotTable.Shot();
+    /** false when the shot table is empty */
+    public boolean valid;
+  }
+
+  private final ShotTable table;
+
+  /**
+   * Creates a new ShotSolver
+   * @param table - shot table measured standing still
+   */
+  public ShotSolver(ShotTable table) {
+    this.table = table;
+  }
+
+  /** @return seconds from release to the speaker for a standing still shot from distance */
+  public static double timeOfFlight(double distance) {
+    return Constants.ShotSolver.RELEASE_DELAY + distance / Constants.ShotSolver.NOTE_SPEED;
+  }
+
+  /**
+   * @param pose - robot pose
+   * @param robotRelativeSpeeds - robot relative chassis speeds, e.g. from Swerve.getRobotRelativeSpeeds()
+   * @param target - speaker in blue origin field coordinates
+   * @param solution - written with the result
+   */
+  public void solve(Pose2d pose, ChassisSpeeds robotRelativeSpeeds, Translation2d target, Solution solution) {
+    double heading = pose.getRotation().getRadians();
+    double cos = Math.cos(heading), sin = Math.sin(heading);
+    double vx = robotRelativeSpeeds.vxMetersPerSecond * cos - robotRelativeSpeeds.vyMetersPerSecond * sin;
+    double vy = robotRelativeSpeeds.vxMetersPerSecond * sin + robotRelativeSpeeds.vyMetersPerSecond * cos;
+
+    // vector from the robot to the real target
+    double dx = target.getX() - pose.getX(), dy = target.getY() - pose.getY();
+
+    double virtualDx = dx, virtualDy = dy;
+    double time = timeOfFlight(Math.hypot(dx, dy));
+    for (int i = 0; i < Constants.ShotSolver.MAX_ITERATIONS; i++) {
+      double nextDx = dx - vx * time, nextDy = dy - vy * time;
+      boolean converged = Math.hypot(nextDx - virtualDx, nextDy - virtualDy) < Constants.ShotSolver.CONVERGENCE;
+      virtualDx = nextDx;
+      virtualDy = nextDy;
+      time = timeOfFlight(Math.hypot(virtualDx, virtualDy));
+      if (converged) break;
+    }
+
+    double distanceSquared = virtualDx * virtualDx + virtualDy * virtualDy;
+    solution.distance = Math.sqrt(distanceSquared);
+    solution.timeOfFlight = time;
+    solution.headingRadians = Math.atan2(virtualDy, virtualDx);
+    // the target moves at -v relative to the robot, so the bearing turns at (r x -v) / |r|^2
+    solution.headingVelocity = distanceSquared > 1e-6 ? (virtualDy * vx - virtualDx * vy) / distanceSquared : 0;
+    solution.valid = table.lookup(solution.distance, solution.shot);
+  }
+}
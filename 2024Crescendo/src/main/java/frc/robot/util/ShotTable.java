@@ -0,0 +1,223 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.shuffleboard.BuiltInWidgets;
+import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
+
+import frc.robot.Constants;
+
+/**
+ * Shooter velocities and pivot angle by distance to the speaker, linearly interpolated between measured shots.
+ * <p> Rows are kept sorted by distance in parallel primitive arrays and looked up with a binary search. Distances
+ * outside the table use the nearest row. Rows can be added, replaced and removed from the dashboard during practice
+ * and saved to {@link Constants.ShotTable#SAVE_PATH} in /home/lvuser, where the next deploy cannot overwrite them.
+ */
+public class ShotTable {
+  /** One interpolated shot, reused between lookups */
+  public static class Shot {
+    /** top and bottom shooter velocity in rotations per second, pivot angle in pivot rotations */
+    public double topVelocity, bottomVelocity, pivotRotations;
+  }
+
+  private final File deployFile, saveFile;
+  private double[] distances = new double[0], topVelocities = new double[0];
+  private double[] bottomVelocities = new double[0], pivotAngles = new double[0];
+
+  /**
+   * Loads the table from the last save if there is one, otherwise from {@link Constants.ShotTable#DEPLOY_PATH},
+   * starting empty if it cannot be read
+   */
+  public ShotTable() {
+    deployFile = new File(Filesystem.getDeployDirectory(), Constants.ShotTable.DEPLOY_PATH);
+    // the operating directory is /home/lvuser on the robot and the project directory in simulation
+    saveFile = new File(Filesystem.getOperatingDirectory(), Constants.ShotTable.SAVE_PATH);
+
+    File file = saveFile.exists() ? saveFile : deployFile;
+    try {
+      load(file);
+      DataLogManager.log("Loaded " + distances.length + " shots from " + file);
+    } catch (IOException | RuntimeException e) {
+      DataLogManager.log("Could not load shot table " + file + ": " + e.getMessage());
+    }
+  }
+
+  private void load(File file) throws IOException {
+    JsonNode shots = new ObjectMapper().readTree(file).get("shots");
+    for (JsonNode shot : shots) {
+      put(shot.get("distance").asDouble(), shot.get("top").asDouble(), shot.get("bottom").asDouble(),
+        shot.get("pivot").asDouble());
+    }
+  }
+
+  /**
+   * Writes the table to {@link Constants.ShotTable#SAVE_PATH} on a background thread so the robot loop never waits on
+   * the file. Copy it into src/main/deploy to keep it on other robots
+   */
+  public void save() {
+    // copied here, put() replaces rows in place
+    double[] distances = this.distances.clone(), topVelocities = this.topVelocities.clone();
+    double[] bottomVelocities = this.bottomVelocities.clone(), pivotAngles = this.pivotAngles.clone();
+
+    Thread saver = new Thread(() -> {
+      ObjectMapper mapper = new ObjectMapper();
+      ObjectNode root = mapper.createObjectNode();
+      ArrayNode shots = root.putArray("shots");
+      for (int i = 0; i < distances.length; i++) {
+        shots.addObject()
+          .put("distance", distances[i])
+          .put("top", topVelocities[i])
+          .put("bottom", bottomVelocities[i])
+          .put("pivot", pivotAngles[i]);
+      }
+
+      // one save writes the file at a time
+      synchronized (saveFile) {
+        try {
+          mapper.writerWithDefaultPrettyPrinter().writeValue(saveFile, root);
+          DataLogManager.log("Saved " + distances.length + " shots to " + saveFile);
+        } catch (IOException e) {
+          DataLogManager.log("Could not save shot table " + saveFile + ": " + e.getMessage());
+        }
+      }
+    }, "ShotTableSaver");
+    saver.setDaemon(true);
+    saver.start();
+  }
+
+  /** @return number of rows */
+  public int size() {
+    return distances.length;
+  }
+
+  /**
+   * Interpolates the shot for a distance
+   * @param distance - meters from the speaker
+   * @param shot - written with the result
+   * @return false, leaving shot untouched, when the table is empty
+   */
+  public boolean lookup(double distance, Shot shot) {
+    int count = distances.length;
+    if (count == 0) return false;
+
+    int index = Arrays.binarySearch(distances, distance);
+    if (index >= 0) {
+      set(shot, index, index, 0);
+    } else {
+      int upper = -index - 1;
+      if (upper == 0) set(shot, 0, 0, 0);
+      else if (upper == count) set(shot, count - 1, count - 1, 0);
+      else {
+        int lower = upper - 1;
+        set(shot, lower, upper, (distance - distances[lower]) / (distances[upper] - distances[lower]));
+      }
+    }
+    return true;
+  }
+
+  private void set(Shot shot, int lower, int upper, double t) {
+    shot.topVelocity = topVelocities[lower] + (topVelocities[upper] - topVelocities[lower]) * t;
+    shot.bottomVelocity = bottomVelocities[lower] + (bottomVelocities[upper] - bottomVelocities[lower]) * t;
+    shot.pivotRotations = pivotAngles[lower] + (pivotAngles[upper] - pivotAngles[lower]) * t;
+  }
+
+  /**
+   * Adds a row, replacing any row at the same distance
+   * @param distance - meters from the speaker
+   * @param top - top shooter velocity in rotations per second
+   * @param bottom - bottom shooter velocity in rotations per second
+   * @param pivot - pivot angle in pivot rotations
+   */
+  public void put(double distance, double top, double bottom, double pivot) {
+    int index = Arrays.binarySearch(distances, distance);
+    if (index >= 0) {
+      topVelocities[index] = top;
+      bottomVelocities[index] = bottom;
+      pivotAngles[index] = pivot;
+      return;
+    }
+
+    // grow every array at the same sorted position
+    int insert = -index - 1;
+    distances = inserted(distances, insert, distance);
+    topVelocities = inserted(topVelocities, insert, top);
+    bottomVelocities = inserted(bottomVelocities, insert, bottom);
+    pivotAngles = inserted(pivotAngles, insert, pivot);
+  }
+
+  /**
+   * Removes the row closest to a distance
+   * @param distance - meters from the speaker
+   */
+  public void remove(double distance) {
+    if (distances.length == 0) return;
+    int index = Arrays.binarySearch(distances, distance);
+    if (index < 0) {
+      int upper = -index - 1;
+      if (upper == distances.length) index = upper - 1;
+      else if (upper == 0) index = 0;
+      else index = distance - distances[upper - 1] < distances[upper] - distance ? upper - 1 : upper;
+    }
+
+    distances = removed(distances, index);
+    topVelocities = removed(topVelocities, index);
+    bottomVelocities = removed(bottomVelocities, index);
+    pivotAngles = removed(pivotAngles, index);
+  }
+
+  private static double[] inserted(double[] values, int index, double value) {
+    double[] result = new double[values.length + 1];
+    System.arraycopy(values, 0, result, 0, index);
+    result[index] = value;
+    System.arraycopy(values, index, result, index + 1, values.length - index);
+    return result;
+  }
+
+  private static double[] removed(double[] values, int index) {
+    double[] result = new double[values.length - 1];
+    System.arraycopy(values, 0, result, 0, index);
+    System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+    return result;
+  }
+
+  /**
+   * Adds shot editing to Shuffleboard: fill in a row, then press Put Shot to add or replace it, Remove Shot to delete
+   * the row nearest the distance, and Save Table to write the save file
+   * @param tab - ShuffleboardTab to add values to
+   */
+  public void configDashboard(ShuffleboardTab tab) {
+    GenericEntry distance = tab.add("Shot Distance", 0.0).getEntry();
+    GenericEntry top = tab.add("Shot Top Velocity", 0.0).getEntry();
+    GenericEntry bottom = tab.add("Shot Bottom Velocity", 0.0).getEntry();
+    GenericEntry pivot = tab.add("Shot Pivot Rotations", 0.0).getEntry();
+    GenericEntry putButton = tab.add("Put Shot", false).withWidget(BuiltInWidgets.kToggleButton).getEntry();
+    GenericEntry removeButton = tab.add("Remove Shot", false).withWidget(BuiltInWidgets.kToggleButton).getEntry();
+    GenericEntry saveButton = tab.add("Save Table", false).withWidget(BuiltInWidgets.kToggleButton).getEntry();
+    tab.addNumber("Shot Count", () -> distances.length);
+
+    new Trigger(() -> putButton.getBoolean(false)).onTrue(Commands.runOnce(() -> {
+      put(distance.getDouble(0), top.getDouble(0), bottom.getDouble(0), pivot.getDouble(0));
+      putButton.setBoolean(false);
+    }).ignoringDisable(true));
+    new Trigger(() -> removeButton.getBoolean(false)).onTrue(Commands.runOnce(() -> {
+      remove(distance.getDouble(0));
+      removeButton.setBoolean(false);
+    }).ignoringDisable(true));
+    new Trigger(() -> saveButton.getBoolean(false)).onTrue(Commands.runOnce(() -> {
+      save();
+      saveButton.setBoolean(false);
+    }).ignoringDisable(true));
+  }
+}
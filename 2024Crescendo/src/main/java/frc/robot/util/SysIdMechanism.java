@@ -0,0 +1,382 @@
+package frc.robot.util;
+
+import static edu.wpi.first.units.Units.Second;
+import static edu.wpi.first.units.Units.Seconds;
+import static edu.wpi.first.units.Units.Volts;
+
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.units.Angle;
+import edu.wpi.first.units.MutableMeasure;
+import edu.wpi.first.units.Velocity;
+import edu.wpi.first.units.Voltage;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.sysid.SysIdRoutineLog;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
+
+import frc.robot.Constants;
+
+/**
+ * Runs the WPILib SysId quasistatic and dynamic tests on one mechanism and fits its feedforward on the robot.
+ * <p> While a test runs a notifier samples the mechanism every {@link Constants.SysId#LOG_PERIOD} seconds, far faster
+ * than the robot loop, and writes voltage, position and velocity to the WPILOG in the format the SysId tool reads.
+ * The same samples feed a least squares fit of volts = kS sgn(v) + kV v + kA a (+ kG or kG cos(angle - offset)), published
+ * under SysId/&lt;name&gt; and logged when {@link #characterize()} finishes. Arms fit the cosine and sine of the angle
+ * separately, so the fit also finds the offset of horizontal instead of depending on a guessed one. Gains are in volts per the position units
+ * the mechanism reports, e.g. wheel rotations for the swerve drive and radians for the pivot, so they drop straight
+ * into the matching Constants.
+ * <p> Signals handed to {@link #withSignals} are refreshed by the sampler thread, so pass copies nothing else
+ * refreshes. Before the first test their update frequency is raised to the sample rate, along with anything handed to
+ * {@link #withSetup} like Spark MAX status frames, and the test waits until the {@link DeviceCommandQueue} has applied
+ * it. Samples whose refresh fails are left out. The raised rates stay until reboot, characterize in the pit.
+ */
+public final class SysIdMechanism {
+  /** What gravity does to the mechanism */
+  public enum Gravity {
+    /** flywheels and drivetrains, no kG */
+    NONE,
+    /** elevators and winches, a constant kG */
+    CONSTANT,
+    /** arms, kG times the cosine of the angle from horizontal, where horizontal is fitted too */
+    COSINE
+  }
+
+  private final String name;
+  private final SysIdRoutine routine;
+  private final Angle unit;
+  private final Velocity<Angle> velocityUnit;
+  private final DoubleSupplier voltage, position, velocity;
+  private final SysIdRoutineLog log;
+  private final Notifier sampler;
+
+  private BaseStatusSignal[] signals = new BaseStatusSignal[0];
+  private Runnable setup = () -> {};
+  private boolean ratesRequested = false;
+  private volatile boolean ratesRaised = false;
+  private DoubleSupplier acceleration, angleRadians;
+  private Gravity gravity = Gravity.NONE;
+  private double minPosition = Double.NEGATIVE_INFINITY, maxPosition = Double.POSITIVE_INFINITY;
+  private Runnable release = () -> {};
+
+  // sampler state, only touched by the sampler and while synchronized
+  private final MutableMeasure<Voltage> loggedVoltage = MutableMeasure.mutable(Volts.of(0));
+  private final MutableMeasure<Angle> loggedPosition;
+  private final MutableMeasure<Velocity<Angle>> loggedVelocity;
+  private final LinearFilter accelerationFilter = LinearFilter.movingAverage(Constants.SysId.ACCELERATION_SAMPLES);
+  private double lastVelocity = Double.NaN, lastTime;
+  private volatile double lastPosition = Double.NaN;
+
+  // normal equations of the fit, features are sgn(v), v, a and the gravity terms
+  private final double[][] normal = new double[5][5];
+  private final double[] moments = new double[5];
+  private final double[] features = new double[5];
+  private int samples = 0;
+  private double kS = Double.NaN, kV = Double.NaN, kA = Double.NaN, kG = Double.NaN, horizontalOffset = Double.NaN;
+
+  /**
+   * Creates a new SysIdMechanism
+   * @param name - mechanism name for the log and dashboard
+   * @param subsystem - subsystem the tests require
+   * @param unit - unit position and velocity are reported in, Rotations or Radians
+   * @param drive - applies a raw voltage to the mechanism, bypassing its controllers
+   * @param voltage - voltage the motor is actually applying
+   * @param position - mechanism position in unit
+   * @param velocity - mechanism velocity in unit per second
+   * @param rampRate - quasistatic ramp in volts per second
+   * @param stepVoltage - dynamic step in volts
+   * @param timeout - longest any one test runs, in seconds
+   */
+  public SysIdMechanism(String name, Subsystem subsystem, Angle unit, DoubleConsumer drive, DoubleSupplier voltage,
+      DoubleSupplier position, DoubleSupplier velocity, double rampRate, double stepVoltage, double timeout) {
+    this.name = name;
+    this.unit = unit;
+    this.voltage = voltage;
+    this.position = position;
+    this.velocity = velocity;
+    velocityUnit = unit.per(Second);
+    loggedPosition = MutableMeasure.mutable(unit.of(0));
+    loggedVelocity = MutableMeasure.mutable(velocityUnit.of(0));
+    log = new SysIdRoutineLog(name);
+
+    // the sampler logs the motor at its own rate, the routine only records the test state
+    routine = new SysIdRoutine(
+      new SysIdRoutine.Config(Volts.per(Second).of(rampRate), Volts.of(stepVoltage), Seconds.of(timeout)),
+      new SysIdRoutine.Mechanism(volts -> drive.accept(volts.in(Volts)), routineLog -> {}, subsystem, name));
+
+    sampler = new Notifier(this::sample);
+    sampler.setName("SysId " + name);
+
+    TelemetryPublisher telemetry = TelemetryPublisher.getInstance();
+    telemetry.addNumber("SysId/" + name + "/kS", TelemetryPublisher.Tier.ON_CHANGE, () -> kS);
+    telemetry.addNumber("SysId/" + name + "/kV", TelemetryPublisher.Tier.ON_CHANGE, () -> kV);
+    telemetry.addNumber("SysId/" + name + "/kA", TelemetryPublisher.Tier.ON_CHANGE, () -> kA);
+    telemetry.addNumber("SysId/" + name + "/kG", TelemetryPublisher.Tier.ON_CHANGE, () -> kG);
+    telemetry.addNumber("SysId/" + name + "/Horizontal Offset", TelemetryPublisher.Tier.ON_CHANGE, () -> horizontalOffset);
+    telemetry.addNumber("SysId/" + name + "/Samples", TelemetryPublisher.Tier.SLOW, this::getSamples);
+  }
+
+  /**
+   * @param signals - copies of the Phoenix signals the suppliers read, refreshed together before every sample
+   * @return this mechanism
+   */
+  public SysIdMechanism withSignals(BaseStatusSignal... signals) {
+    this.signals = signals;
+    return this;
+  }
+
+  /**
+   * @param acceleration - measured acceleration in unit per second squared, the velocity is differentiated without it
+   * @return this mechanism
+   */
+  public SysIdMechanism withAcceleration(DoubleSupplier acceleration) {
+    this.acceleration = acceleration;
+    return this;
+  }
+
+  /**
+   * @param gravity - how gravity loads the mechanism
+   * @param angleRadians - mechanism angle for {@link Gravity#COSINE} with any zero, the angle it reads at horizontal is
+   * fitted and published as Horizontal Offset in radians. May be null otherwise
+   * @return this mechanism
+   */
+  public SysIdMechanism withGravity(Gravity gravity, DoubleSupplier angleRadians) {
+    this.gravity = gravity;
+    this.angleRadians = angleRadians;
+    return this;
+  }
+
+  /**
+   * Ends forward tests at the max position and reverse tests at the min, for mechanisms with hard stops
+   * @param min - lowest safe position in unit
+   * @param max - highest safe position in unit
+   * @return this mechanism
+   */
+  public SysIdMechanism withLimits(double min, double max) {
+    minPosition = min;
+    maxPosition = max;
+    return this;
+  }
+
+  /**
+   * @param setup - blocking device calls that let the mechanism be sampled every {@link Constants.SysId#LOG_PERIOD},
+   * e.g. faster Spark MAX status frames, run once on the {@link DeviceCommandQueue} before the first test
+   * @return this mechanism
+   */
+  public SysIdMechanism withSetup(Runnable setup) {
+    this.setup = setup;
+    return this;
+  }
+
+  /**
+   * @param release - hands the mechanism back to its own control after every test, e.g. to hold position
+   * @return this mechanism
+   */
+  public SysIdMechanism withRelease(Runnable release) {
+    this.release = release;
+    return this;
+  }
+
+  /**
+   * @param direction - which way to ramp
+   * @return quasistatic test, logged and added to the fit
+   */
+  public Command quasistatic(SysIdRoutine.Direction direction) {
+    return sampled(routine.quasistatic(direction), direction);
+  }
+
+  /**
+   * @param direction - which way to step
+   * @return dynamic test, logged and added to the fit
+   */
+  public Command dynamic(SysIdRoutine.Direction direction) {
+    return sampled(routine.dynamic(direction), direction);
+  }
+
+  /** @return all four tests with rests between them, then the fitted gains are published and logged */
+  public Command characterize() {
+    return Commands.sequence(
+      Commands.runOnce(this::resetFit),
+      quasistatic(SysIdRoutine.Direction.kForward),
+      Commands.waitSeconds(Constants.SysId.REST_TIME),
+      quasistatic(SysIdRoutine.Direction.kReverse),
+      Commands.waitSeconds(Constants.SysId.REST_TIME),
+      dynamic(SysIdRoutine.Direction.kForward),
+      Commands.waitSeconds(Constants.SysId.REST_TIME),
+      dynamic(SysIdRoutine.Direction.kReverse),
+      Commands.runOnce(this::solve)
+    ).withName("SysId " + name);
+  }
+
+  private Command sampled(Command test, SysIdRoutine.Direction direction) {
+    Command sampledTest = test
+      .until(() -> direction == SysIdRoutine.Direction.kForward ? lastPosition >= maxPosition : lastPosition <= minPosition)
+      .beforeStarting(this::startSampling)
+      .finallyDo(interrupted -> {
+        sampler.stop();
+        release.run();
+      });
+    // the routine only starts driving once the sample rates are up, so no stale frames go into the fit
+    return Commands.runOnce(this::raiseRates).andThen(Commands.waitUntil(() -> ratesRaised), sampledTest)
+      .withName(sampledTest.getName());
+  }
+
+  private void raiseRates() {
+    if (ratesRequested) return;
+    ratesRequested = true;
+    BaseStatusSignal[] raised = signals;
+    Runnable raisedSetup = setup;
+    DeviceCommandQueue.getInstance().submit("SysId " + name + "/Rates", () -> {
+      try {
+        if (raised.length > 0) BaseStatusSignal.setUpdateFrequencyForAll(1 / Constants.SysId.LOG_PERIOD, raised);
+        raisedSetup.run();
+      } finally {
+        ratesRaised = true;
+      }
+    });
+  }
+
+  private void startSampling() {
+    synchronized (this) {
+      lastVelocity = Double.NaN;
+      accelerationFilter.reset();
+    }
+    lastPosition = position.getAsDouble();
+    sampler.startPeriodic(Constants.SysId.LOG_PERIOD);
+  }
+
+  private synchronized void sample() {
+    if (signals.length > 0 && !BaseStatusSignal.refreshAll(signals).isOK()) return;
+    double now = Timer.getFPGATimestamp();
+    double volts = voltage.getAsDouble(), currentPosition = position.getAsDouble(), currentVelocity = velocity.getAsDouble();
+    lastPosition = currentPosition;
+
+    log.motor(name)
+      .voltage(loggedVoltage.mut_replace(volts, Volts))
+      .angularPosition(loggedPosition.mut_replace(currentPosition, unit))
+      .angularVelocity(loggedVelocity.mut_replace(currentVelocity, velocityUnit));
+
+    double currentAcceleration;
+    if (acceleration != null) currentAcceleration = acceleration.getAsDouble();
+    else {
+      boolean first = Double.isNaN(lastVelocity) || now <= lastTime;
+      double difference = first ? 0 : (currentVelocity - lastVelocity) / (now - lastTime);
+      lastVelocity = currentVelocity;
+      lastTime = now;
+      if (first) return;
+      currentAcceleration = accelerationFilter.calculate(difference);
+    }
+
+    // below this the mechanism is still breaking away, which says nothing about kV or kA
+    if (Math.abs(currentVelocity) < Constants.SysId.MIN_VELOCITY) return;
+
+    features[0] = Math.signum(currentVelocity);
+    features[1] = currentVelocity;
+    features[2] = currentAcceleration;
+    if (gravity == Gravity.COSINE) {
+      double angle = angleRadians.getAsDouble();
+      features[3] = Math.cos(angle);
+      features[4] = Math.sin(angle);
+    } else features[3] = 1;
+    int size = featureCount();
+    for (int row = 0; row < size; row++) {
+      for (int column = 0; column < size; column++) {
+        normal[row][column] += features[row] * features[column];
+      }
+      moments[row] += features[row] * volts;
+    }
+    samples++;
+  }
+
+  private int featureCount() {
+    switch (gravity) {
+      case NONE: return 3;
+      case CONSTANT: return 4;
+      default: return 5;
+    }
+  }
+
+  /** @return samples in the fit so far */
+  public synchronized int getSamples() {
+    return samples;
+  }
+
+  private synchronized void resetFit() {
+    for (int row = 0; row < normal.length; row++) {
+      Arrays.fill(normal[row], 0);
+    }
+    Arrays.fill(moments, 0);
+    samples = 0;
+  }
+
+  /** Solves the normal equations by Gaussian elimination, publishing and logging the gains */
+  private synchronized void solve() {
+    int size = featureCount();
+    double[][] system = new double[size][size + 1];
+    for (int row = 0; row < size; row++) {
+      System.arraycopy(normal[row], 0, system[row], 0, size);
+      system[row][size] = moments[row];
+    }
+
+    double[] gains = new double[size];
+    boolean solved = samples > size;
+    for (int pivot = 0; pivot < size && solved; pivot++) {
+      int best = pivot;
+      for (int row = pivot + 1; row < size; row++) {
+        if (Math.abs(system[row][pivot]) > Math.abs(system[best][pivot])) best = row;
+      }
+      if (Math.abs(system[best][pivot]) < 1e-9) {
+        solved = false;
+        break;
+      }
+      double[] swap = system[pivot];
+      system[pivot] = system[best];
+      system[best] = swap;
+
+      for (int row = pivot + 1; row < size; row++) {
+        double factor = system[row][pivot] / system[pivot][pivot];
+        for (int column = pivot; column <= size; column++) {
+          system[row][column] -= factor * system[pivot][column];
+        }
+      }
+    }
+    if (solved) {
+      for (int row = size - 1; row >= 0; row--) {
+        double sum = system[row][size];
+        for (int column = row + 1; column < size; column++) {
+          sum -= system[row][column] * gains[column];
+        }
+        gains[row] = sum / system[row][row];
+      }
+    }
+
+    // too little motion to separate the terms, usually a test that hit its limit right away
+    if (!solved) {
+      kS = kV = kA = kG = horizontalOffset = Double.NaN;
+      DataLogManager.log("SysId " + name + ": not enough data to fit, " + samples + " samples");
+      return;
+    }
+    kS = gains[0];
+    kV = gains[1];
+    kA = gains[2];
+    if (gravity == Gravity.COSINE) {
+      // a cos + b sin is kG cos(angle - offset) with kG = hypot(a, b) and offset = atan2(b, a)
+      kG = Math.hypot(gains[3], gains[4]);
+      horizontalOffset = Math.atan2(gains[4], gains[3]);
+    } else {
+      kG = size > 3 ? gains[3] : 0;
+      horizontalOffset = Double.NaN;
+    }
+    DataLogManager.log(String.format("SysId %s: kS %.4f kV %.4f kA %.4f kG %.4f horizontal offset %.4f rad from %d samples",
+      name, kS, kV, kA, kG, horizontalOffset, samples));
+  }
+}
@@ -0,0 +1,211 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+
+import frc.robot.Constants;
+
+/**
+ * Logs full rate telemetry to WPILOG files without doing any encoding or file work on the main loop.
+ * <p> {@link Channel#append} copies the values and an FPGA timestamp into a preallocated slot of a single producer,
+ * single consumer ring and returns. A background writer drains the ring into a {@link DataLog}, starting a new file
+ * once the current one passes {@link Constants.Telemetry#MAX_FILE_BYTES} and deleting the oldest files past
+ * {@link Constants.Telemetry#MAX_FILES}. When the ring is full new samples are dropped and counted, the loop never waits.
+ * <p> Only append from the main robot thread.
+ */
+public final class TelemetryLogger {
+  private static TelemetryLogger instance;
+
+  /** One logged signal, either a single value or a fixed width array */
+  public final class Channel {
+    private final String name;
+    private final int width;
+
+    // only touched by the writer thread
+    private final double[] writeBuffer;
+    private DoubleLogEntry valueEntry;
+    private DoubleArrayLogEntry arrayEntry;
+    private int entryFile = -1;
+
+    private Channel(String name, int width) {
+      this.name = name;
+      this.width = width;
+      writeBuffer = new double[width];
+    }
+
+    /** @param value - value to log, for single value channels */
+    public void append(double value) {
+      Sample sample = claim();
+      if (sample == null) return;
+      sample.values[0] = value;
+      publish(sample, this);
+    }
+
+    /** @param value - value to log as 1 or 0, for single value channels */
+    public void append(boolean value) {
+      append(value ? 1.0 : 0.0);
+    }
+
+    /** @param values - values to log, only the first width are copied */
+    public void append(double[] values) {
+      Sample sample = claim();
+      if (sample == null) return;
+      System.arraycopy(values, 0, sample.values, 0, width);
+      publish(sample, this);
+    }
+  }
+
+  private static final class Sample {
+    private final double[] values = new double[Constants.Telemetry.MAX_CHANNEL_WIDTH];
+    private Channel channel;
+    private long timestamp;
+  }
+
+  private final Sample[] ring = new Sample[Constants.Telemetry.QUEUE_SIZE];
+  private final int mask = Constants.Telemetry.QUEUE_SIZE - 1;
+  // tail is only written by the main thread, head only by the writer
+  private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+  private long producerTail = 0, cachedHead = 0;
+  private volatile long droppedSamples = 0;
+
+  private final File directory;
+  private final long session = System.currentTimeMillis();
+  private DataLog log;
+  private int fileIndex = -1;
+  private long fileBytes = 0;
+  private volatile long bytesWritten = 0;
+
+  private TelemetryLogger() {
+    if (Integer.bitCount(ring.length) != 1) {
+      throw new IllegalStateException("Telemetry QUEUE_SIZE must be a power of two");
+    }
+    for (int i = 0; i < ring.length; i++) {
+      ring[i] = new Sample();
+    }
+
+    directory = new File(RobotBase.isReal() ? Constants.Telemetry.ROBOT_DIRECTORY : Constants.Telemetry.SIM_DIRECTORY);
+
+    Thread writer = new Thread(this::runWriter, "TelemetryWriter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /** @return the logger, starting the writer thread on first use */
+  public static TelemetryLogger getInstance() {
+    if (instance == null) instance = new TelemetryLogger();
+    return instance;
+  }
+
+  /**
+   * @param name - WPILOG entry name, e.g. "Swerve/FrontLeft/State"
+   * @param width - values per sample, 1 logs a double entry and anything wider a double[] entry
+   * @return new channel
+   */
+  public Channel channel(String name, int width) {
+    if (width < 1 || width > Constants.Telemetry.MAX_CHANNEL_WIDTH) {
+      throw new IllegalArgumentException("Telemetry channel " + name + " has width " + width);
+    }
+    return new Channel(name, width);
+  }
+
+  /** @return samples dropped because the writer fell behind */
+  public long getDroppedSamples() {
+    return droppedSamples;
+  }
+
+  /** @return estimated bytes handed to the log since startup */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /** @return next free slot, or null when the ring is full */
+  private Sample claim() {
+    if (producerTail - cachedHead >= ring.length) {
+      cachedHead = head.get();
+      if (producerTail - cachedHead >= ring.length) {
+        droppedSamples++;
+        return null;
+      }
+    }
+    return ring[(int) (producerTail & mask)];
+  }
+
+  private void publish(Sample sample, Channel channel) {
+    sample.channel = channel;
+    sample.timestamp = RobotController.getFPGATime();
+    tail.lazySet(++producerTail);
+  }
+
+  private void runWriter() {
+    long consumerHead = 0;
+    while (!Thread.currentThread().isInterrupted()) {
+      long available = tail.get();
+      if (consumerHead == available) {
+        try {
+          Thread.sleep((long) (Constants.Telemetry.WRITER_PERIOD * 1000));
+        } catch (InterruptedException e) {
+          break;
+        }
+        continue;
+      }
+
+      while (consumerHead < available) {
+        write(ring[(int) (consumerHead & mask)]);
+        consumerHead++;
+      }
+      head.lazySet(consumerHead);
+    }
+
+    if (log != null) log.close();
+  }
+
+  private void write(Sample sample) {
+    if (log == null || fileBytes >= Constants.Telemetry.MAX_FILE_BYTES) rotate();
+
+    Channel channel = sample.channel;
+    if (channel.entryFile != fileIndex) {
+      // entries belong to a single file, recreate them in each new one
+      if (channel.width == 1) channel.valueEntry = new DoubleLogEntry(log, channel.name);
+      else channel.arrayEntry = new DoubleArrayLogEntry(log, channel.name);
+      channel.entryFile = fileIndex;
+    }
+
+    if (channel.width == 1) {
+      channel.valueEntry.append(sample.values[0], sample.timestamp);
+    } else {
+      System.arraycopy(sample.values, 0, channel.writeBuffer, 0, channel.width);
+      channel.arrayEntry.append(channel.writeBuffer, sample.timestamp);
+    }
+
+    // record header, entry id, timestamp and payload
+    long bytes = 16 + 8L * channel.width;
+    fileBytes += bytes;
+    bytesWritten += bytes;
+  }
+
+  /** Closes the current file and starts the next one, deleting the oldest files over the limit */
+  private void rotate() {
+    if (log != null) log.close();
+
+    directory.mkdirs();
+    fileIndex++;
+    fileBytes = 0;
+    log = new DataLog(directory.getPath(), String.format("telemetry_%d_%03d.wpilog", session, fileIndex));
+
+    File[] files = directory.listFiles((dir, name) -> name.startsWith("telemetry_") && name.endsWith(".wpilog"));
+    if (files == null || files.length <= Constants.Telemetry.MAX_FILES) return;
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (int i = 0; i < files.length - Constants.Telemetry.MAX_FILES; i++) {
+      if (!files[i].delete()) DataLogManager.log("Telemetry could not delete " + files[i].getName());
+    }
+  }
+}
@@ -0,0 +1,274 @@
+package frc.robot.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringEntry;
+import edu.wpi.first.networktables.StructArrayPublisher;
+import edu.wpi.first.util.struct.Struct;
+import edu.wpi.first.wpilibj.Timer;
+
+import frc.robot.Constants;
+
+/**
+ * Publishes dashboard telemetry to NetworkTables at a per signal rate, under /Telemetry.
+ * <p> Each signal has a {@link Tier} that can be changed at runtime from /Telemetry/Tiers/&lt;name&gt;. Published
+ * bytes are estimated from the value sizes and shown as /Telemetry/Bytes Per Second. When the bytes the tiers ask for
+ * go over /Telemetry/Budget, every loop signals drop to the slow rate until the team lowers some tiers or raises the
+ * budget.
+ * <p> Full rate data for post-match analysis belongs in {@link TelemetryLogger}, this is only what the drivers and pit
+ * need to see live.
+ */
+public final class TelemetryPublisher {
+  private static TelemetryPublisher instance;
+
+  /** How often a signal is published */
+  public enum Tier {
+    /** every robot loop */
+    EVERY_LOOP,
+    /** every {@link Constants.Telemetry#SLOW_PERIOD_LOOPS} loops */
+    SLOW,
+    /** at the slow rate, and only when the value changed */
+    ON_CHANGE,
+    /** not published */
+    OFF
+  }
+
+  private abstract class Signal {
+    private final StringEntry tierEntry;
+    private Tier tier;
+    private int lastBytes = 0;
+
+    private Signal(String name, Tier tier) {
+      this.tier = tier;
+      tierEntry = table.getSubTable("Tiers").getStringTopic(name).getEntry(tier.name());
+      tierEntry.set(tier.name());
+      signals.add(this);
+    }
+
+    private void readTier() {
+      String requested = tierEntry.get();
+      if (requested.equals(tier.name())) return;
+      try {
+        tier = Tier.valueOf(requested);
+        forget();
+      } catch (IllegalArgumentException e) {
+        tierEntry.set(tier.name());
+      }
+    }
+
+    /** Reads the value from the supplier, called once per loop before {@link #changed()} and {@link #publish()} */
+    protected abstract void read();
+
+    /** @return whether the read value is different from the last one published on change */
+    protected abstract boolean changed();
+
+    /** Keeps the read value as the last one published on change */
+    protected abstract void remember();
+
+    /** Makes the next {@link #changed()} true, the last value published on change may be stale after a tier change */
+    protected abstract void forget();
+
+    /** @return estimated bytes sent publishing the read value */
+    protected abstract int publish();
+  }
+
+  private final class NumberSignal extends Signal {
+    private final DoublePublisher publisher;
+    private final DoubleSupplier supplier;
+    private double value, last;
+    private boolean hasLast = false;
+
+    private NumberSignal(String name, Tier tier, DoubleSupplier supplier) {
+      super(name, tier);
+      this.supplier = supplier;
+      publisher = table.getDoubleTopic(name).publish();
+    }
+
+    protected void read() {
+      value = supplier.getAsDouble();
+    }
+
+    protected boolean changed() {
+      return !hasLast || Double.compare(value, last) != 0;
+    }
+
+    protected void remember() {
+      last = value;
+      hasLast = true;
+    }
+
+    protected void forget() {
+      hasLast = false;
+    }
+
+    protected int publish() {
+      publisher.set(value);
+      return Constants.Telemetry.MESSAGE_OVERHEAD_BYTES + 8;
+    }
+  }
+
+  private final class StructArraySignal<T> extends Signal {
+    private final StructArrayPublisher<T> publisher;
+    private final Supplier<T[]> supplier;
+    private final Struct<T> struct;
+    private final int structSize;
+    private T[] value;
+    // packed bytes of the value and of the last one published on change, compared instead of the elements since
+    // suppliers may refill the same objects
+    private ByteBuffer packed = ByteBuffer.allocate(0), lastPacked = ByteBuffer.allocate(0);
+    private boolean hasLast = false;
+
+    private StructArraySignal(String name, Tier tier, Struct<T> struct, Supplier<T[]> supplier) {
+      super(name, tier);
+      this.supplier = supplier;
+      this.struct = struct;
+      structSize = struct.getSize();
+      publisher = table.getStructArrayTopic(name, struct).publish();
+    }
+
+    protected void read() {
+      value = supplier.get();
+    }
+
+    protected boolean changed() {
+      int bytes = structSize * value.length;
+      if (packed.capacity() < bytes) {
+        packed = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        lastPacked = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+      }
+      packed.clear();
+      for (T element : value) {
+        struct.pack(packed, element);
+      }
+      packed.flip();
+      return !hasLast || !packed.equals(lastPacked);
+    }
+
+    protected void remember() {
+      // swap so the bytes changed() just packed become the last published
+      ByteBuffer swap = lastPacked;
+      lastPacked = packed;
+      packed = swap;
+      hasLast = true;
+    }
+
+    protected void forget() {
+      hasLast = false;
+    }
+
+    protected int publish() {
+      publisher.set(value);
+      return Constants.Telemetry.MESSAGE_OVERHEAD_BYTES + structSize * value.length;
+    }
+  }
+
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("Telemetry");
+  private final List<Signal> signals = new ArrayList<Signal>();
+
+  private final DoubleEntry budgetEntry;
+  private final DoublePublisher bytesPerSecondPublisher, requestedPublisher;
+  private final BooleanPublisher overBudgetPublisher;
+  private boolean overBudget = false;
+
+  private long loop = 0;
+  private long windowBytes = 0, windowRequested = 0;
+  private double windowStart = Timer.getFPGATimestamp();
+
+  private TelemetryPublisher() {
+    budgetEntry = table.getDoubleTopic("Budget").getEntry(Constants.Telemetry.BYTES_PER_SECOND_BUDGET);
+    budgetEntry.set(Constants.Telemetry.BYTES_PER_SECOND_BUDGET);
+    bytesPerSecondPublisher = table.getDoubleTopic("Bytes Per Second").publish();
+    requestedPublisher = table.getDoubleTopic("Requested Bytes Per Second").publish();
+    overBudgetPublisher = table.getBooleanTopic("Over Budget").publish();
+  }
+
+  /** @return the publisher */
+  public static TelemetryPublisher getInstance() {
+    if (instance == null) instance = new TelemetryPublisher();
+    return instance;
+  }
+
+  /**
+   * @param name - topic name under /Telemetry
+   * @param tier - starting tier
+   * @param supplier - value to publish
+   */
+  public void addNumber(String name, Tier tier, DoubleSupplier supplier) {
+    new NumberSignal(name, tier, supplier);
+  }
+
+  /**
+   * Publishes a whole set of values, e.g. all four module states, as one struct array
+   * @param name - topic name under /Telemetry
+   * @param struct - struct of the elements, e.g. SwerveModuleState.struct
+   * @param tier - starting tier
+   * @param supplier - values to publish, may fill and return the same array every call. Called at most once per loop
+   */
+  public <T> void addStructArray(String name, Struct<T> struct, Tier tier, Supplier<T[]> supplier) {
+    new StructArraySignal<T>(name, tier, struct, supplier);
+  }
+
+  /** Publishes every signal that is due this loop, call once at the end of robotPeriodic() */
+  public void periodic() {
+    boolean slowLoop = loop % Constants.Telemetry.SLOW_PERIOD_LOOPS == 0;
+
+    for (int i = 0; i < signals.size(); i++) {
+      Signal signal = signals.get(i);
+      if (slowLoop) signal.readTier();
+
+      boolean due;
+      switch (signal.tier) {
+        case EVERY_LOOP:
+          due = slowLoop || !overBudget;
+          break;
+        case SLOW:
+          due = slowLoop;
+          break;
+        case ON_CHANGE:
+          due = slowLoop;
+          break;
+        default:
+          due = false;
+      }
+      if (due) {
+        // one supplier call per signal per loop, shared by the change check and the publish
+        signal.read();
+        boolean onChange = signal.tier == Tier.ON_CHANGE;
+        if (!onChange || signal.changed()) {
+          if (onChange) signal.remember();
+          signal.lastBytes = signal.publish();
+          windowBytes += signal.lastBytes;
+          windowRequested += signal.lastBytes;
+        }
+      } else if (signal.tier == Tier.EVERY_LOOP) {
+        // throttled, still count it so the budget is checked against what the tiers ask for
+        windowRequested += signal.lastBytes;
+      }
+    }
+
+    if (slowLoop) {
+      double now = Timer.getFPGATimestamp();
+      if (loop > 0 && now > windowStart) {
+        double requested = windowRequested / (now - windowStart);
+        overBudget = requested > budgetEntry.get();
+        bytesPerSecondPublisher.set(windowBytes / (now - windowStart));
+        requestedPublisher.set(requested);
+        overBudgetPublisher.set(overBudget);
+      }
+      windowStart = now;
+      windowBytes = 0;
+      windowRequested = 0;
+    }
+    loop++;
+  }
+}
@@ -0,0 +1,166 @@
+package frc.robot.util;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pathplanner.lib.path.PathPlannerTrajectory;
+import com.pathplanner.lib.util.PIDConstants;
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+
+import frc.robot.Constants;
+import frc.robot.commands.AutonomousRoutines;
+import frc.robot.modules.ModuleOptimizer;
+import frc.robot.modules.SwerveSetpointGenerator;
+import frc.robot.modules.SwerveModule;
+
+/**
+ * Runs the match hot paths while disabled so the JIT has compiled them before the robot enables.
+ * <p> Each disabled loop runs every workload for up to {@link Constants.WarmUp#LOOP_BUDGET} seconds. While a warm-up
+ * is running {@link #isActive()} is true and {@link SwerveModule} skips its motor writes. It finishes once every
+ * workload has run {@link Constants.WarmUp#ITERATIONS} times and the JIT has stopped compiling for a while.
+ */
+public final class WarmUp {
+  private static volatile boolean active = false;
+
+  private final List<Runnable> workloads = new ArrayList<Runnable>();
+  private final CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+
+  private long iterations = 0;
+  private long lastCompilationTime = -1;
+  private int quietLoops = 0;
+  private boolean done = false;
+
+  // built in workloads
+  private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+    Constants.Swerve.SWERVE_MAX_SPEED, Constants.Swerve.STEER_MAX_VELOCITY * 2 * Math.PI, Constants.Swerve.DRIVE_MAX_ACCELERATION,
+    Constants.Swerve.m_frontLeftLocation, Constants.Swerve.m_frontRightLocation,
+    Constants.Swerve.m_backLeftLocation, Constants.Swerve.m_backRightLocation);
+  // the math inside SwerveModule.setState, one per module
+  private final ModuleOptimizer[] moduleOptimizers = {
+    new ModuleOptimizer(), new ModuleOptimizer(), new ModuleOptimizer(), new ModuleOptimizer()};
+  private final double[] moduleRadians = new double[4];
+  // same gains and limits as the AutoBuilder config in Swerve
+  private final PPHolonomicDriveController followerController = new PPHolonomicDriveController(
+    new PIDConstants(Constants.Auto.kPTranslationController, 0.0, 0.0),
+    new PIDConstants(Constants.Auto.kPThetaController, 0.0, 0.0),
+    Constants.Auto.kMaxModuleSpeedMetersPerSecond, Constants.Auto.kDriveBaseRadiusMeters);
+  private PathPlannerTrajectory trajectory;
+  private final Command commandGroup = Commands.sequence(
+    Commands.runOnce(() -> {}), Commands.parallel(Commands.runOnce(() -> {}), Commands.none()));
+
+  /** Creates a new WarmUp with the kinematics, module, path follower and command group workloads */
+  public WarmUp() {
+    add(this::runKinematics);
+    add(this::runModules);
+    add(this::runPathFollower);
+    add(this::runCommandGroup);
+
+    TelemetryPublisher.getInstance().addNumber("WarmUp/Progress", TelemetryPublisher.Tier.SLOW, this::getProgress);
+  }
+
+  /**
+   * @param workload - one call of a hot path, must not move hardware on its own (module writes are already skipped)
+   */
+  public void add(Runnable workload) {
+    workloads.add(workload);
+  }
+
+  /** @return whether a warm-up is running and hardware writes should be skipped */
+  public static boolean isActive() {
+    return active;
+  }
+
+  /** @return fraction of the warm-up done, 1 once finished */
+  public double getProgress() {
+    if (done) return 1;
+    return Math.min((double) iterations / Constants.WarmUp.ITERATIONS, 0.99);
+  }
+
+  /** Runs workloads for one loop's budget, call from disabledPeriodic() */
+  public void periodic() {
+    if (done) return;
+
+    active = true;
+    long deadline = System.nanoTime() + (long) (Constants.WarmUp.LOOP_BUDGET * 1e9);
+    try {
+      while (System.nanoTime() < deadline) {
+        for (int i = 0; i < workloads.size(); i++) {
+          workloads.get(i).run();
+        }
+        iterations++;
+      }
+    } finally {
+      active = false;
+    }
+
+    if (iterations >= Constants.WarmUp.ITERATIONS && compilerQuiet()) {
+      done = true;
+      DataLogManager.log("Warm-up finished after " + iterations + " iterations");
+    }
+  }
+
+  /** Stops the warm-up, call when the robot enables. A later disabled period picks up where it left off */
+  public void stop() {
+    active = false;
+  }
+
+  /** @return whether the JIT has not compiled anything for {@link Constants.WarmUp#QUIET_LOOPS} loops */
+  private boolean compilerQuiet() {
+    if (compiler == null || !compiler.isCompilationTimeMonitoringSupported()) return true;
+
+    long compilationTime = compiler.getTotalCompilationTime();
+    quietLoops = compilationTime == lastCompilationTime ? quietLoops + 1 : 0;
+    lastCompilationTime = compilationTime;
+    return quietLoops >= Constants.WarmUp.QUIET_LOOPS;
+  }
+
+  private void runKinematics() {
+    // vary the inputs so every branch, including module flips, gets profiled
+    double t = iterations * 0.01;
+    setpointGenerator.calculate(Math.sin(t), Math.cos(t), Math.sin(t * 0.7), t, (iterations & 1) == 0, TimedRobot.kDefaultPeriod);
+    Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(new ChassisSpeeds(Math.sin(t), Math.cos(t), 0.5));
+  }
+
+  private void runModules() {
+    // same calls as SwerveModule.setState without the motor writes, chasing each module's last angle so it flips too
+    for (int i = 0; i < moduleOptimizers.length; i++) {
+      ModuleOptimizer optimizer = moduleOptimizers[i];
+      optimizer.optimize(setpointGenerator.speeds[i], setpointGenerator.angles[i], moduleRadians[i]);
+      if (optimizer.steerChanged()) optimizer.steerSent();
+      if (optimizer.driveChanged()) optimizer.driveSent();
+      moduleRadians[i] = Units.rotationsToRadians(optimizer.getRotations()) + ((iterations & 3) == 0 ? Math.PI : 0);
+    }
+  }
+
+  private void runPathFollower() {
+    if (trajectory == null) {
+      if (!AutonomousRoutines.PathLegs.SShape.isLoaded()) return;
+      var path = AutonomousRoutines.PathLegs.SShape.getPath(false);
+      trajectory = path.getTrajectory(new ChassisSpeeds(), path.getPreviewStartingHolonomicPose().getRotation());
+    }
+
+    double time = (iterations % 100) / 100.0 * trajectory.getTotalTimeSeconds();
+    PathPlannerTrajectory.State state = trajectory.sample(time);
+    Pose2d pose = new Pose2d(state.positionMeters, new Rotation2d(time));
+    Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(followerController.calculateRobotRelativeSpeeds(pose, state));
+  }
+
+  private void runCommandGroup() {
+    commandGroup.initialize();
+    for (int i = 0; i < 4 && !commandGroup.isFinished(); i++) {
+      commandGroup.execute();
+    }
+    commandGroup.end(!commandGroup.isFinished());
+  }
+}
@@ -0,0 +1,134 @@
+package frc.robot.modules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants;
+import frc.robot.commands.SwerveDrive;
+
+class ModuleOptimizerTest {
+    private static final int WARM_UP_LOOPS = 100_000;
+    private static final int MEASURED_LOOPS = 1_000_000;
+
+    private double sink;
+    private final double[] moduleRadians = new double[4];
+
+    @Test
+    void flipsInsteadOfTurningPastNinetyDegrees() {
+        ModuleOptimizer optimizer = new ModuleOptimizer();
+
+        optimizer.optimize(2.0, Math.PI, 0.0);
+        assertTrue(optimizer.isFlipped());
+        assertEquals(-2.0, optimizer.getSpeed(), 1e-9);
+        assertEquals(0.0, optimizer.getRotations(), 1e-9);
+
+        optimizer.optimize(2.0, Math.PI / 4, 0.0);
+        assertFalse(optimizer.isFlipped());
+        assertEquals(2.0, optimizer.getSpeed(), 1e-9);
+        assertEquals(0.125, optimizer.getRotations(), 1e-9);
+    }
+
+    @Test
+    void onlyResendsChangedSetpoints() {
+        ModuleOptimizer optimizer = new ModuleOptimizer();
+
+        optimizer.optimize(1.0, 0.5, 0.0);
+        assertTrue(optimizer.steerChanged());
+        assertTrue(optimizer.driveChanged());
+        optimizer.steerSent();
+        optimizer.driveSent();
+
+        optimizer.optimize(1.0, 0.5, 0.5);
+        assertFalse(optimizer.steerChanged());
+        assertFalse(optimizer.driveChanged());
+
+        optimizer.invalidate();
+        assertTrue(optimizer.steerChanged());
+        assertTrue(optimizer.driveChanged());
+    }
+
+    @Test
+    void setStatePathAllocatesNothing() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        ModuleOptimizer optimizer = new ModuleOptimizer();
+
+        // let the JIT compile the loop before measuring
+        runSetStatePath(optimizer, WARM_UP_LOOPS);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        runSetStatePath(optimizer, MEASURED_LOOPS);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(0, allocated, "bytes allocated over " + MEASURED_LOOPS + " setState loops");
+    }
+
+    @Test
+    void teleopDrivePathAllocatesNothing() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+            Constants.Swerve.SWERVE_MAX_SPEED, Constants.Swerve.STEER_MAX_VELOCITY * 2 * Math.PI, Constants.Swerve.DRIVE_MAX_ACCELERATION,
+            Constants.Swerve.m_frontLeftLocation, Constants.Swerve.m_frontRightLocation,
+            Constants.Swerve.m_backLeftLocation, Constants.Swerve.m_backRightLocation);
+        ModuleOptimizer[] optimizers = {new ModuleOptimizer(), new ModuleOptimizer(), new ModuleOptimizer(), new ModuleOptimizer()};
+
+        runTeleopDrivePath(setpointGenerator, optimizers, WARM_UP_LOOPS);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        runTeleopDrivePath(setpointGenerator, optimizers, MEASURED_LOOPS);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(0, allocated, "bytes allocated over " + MEASURED_LOOPS + " teleop drive loops");
+    }
+
+    /**
+     * SwerveDrive.execute through Swerve.drive to each module's setState, with the joystick and gyro reads and the
+     * motor sends left out
+     */
+    private void runTeleopDrivePath(SwerveSetpointGenerator setpointGenerator, ModuleOptimizer[] optimizers, int loops) {
+        for (int i = 0; i < loops; i++) {
+            double t = i * 0.02;
+            double x = SwerveDrive.cleanAndScaleInput(0.00, Math.sin(t), null, Constants.Swerve.SWERVE_MAX_SPEED);
+            double y = SwerveDrive.cleanAndScaleInput(0.00, Math.cos(t * 0.7), null, Constants.Swerve.SWERVE_MAX_SPEED);
+            double rotation = SwerveDrive.cleanAndScaleInput(0.00, Math.sin(t * 0.3), null, Constants.Swerve.SWERVE_ROTATION_MAX_SPEED_IN_RAD);
+            setpointGenerator.calculate(x, y, rotation, t * 0.1, true, 0.02);
+
+            for (int module = 0; module < optimizers.length; module++) {
+                ModuleOptimizer optimizer = optimizers[module];
+                optimizer.optimize(setpointGenerator.speeds[module], setpointGenerator.angles[module], moduleRadians[module]);
+                if (optimizer.steerChanged()) {
+                    sink += optimizer.getRotations();
+                    optimizer.steerSent();
+                }
+                if (optimizer.driveChanged()) {
+                    sink += optimizer.getDriveVelocity();
+                    optimizer.driveSent();
+                }
+                // the module reaches its setpoint by the next loop
+                moduleRadians[module] = optimizer.getRotations() * 2 * Math.PI;
+            }
+        }
+    }
+
+    /** Same calls and order as {@link SwerveModule#setState(double, double)}, with the motor sends left out */
+    private void runSetStatePath(ModuleOptimizer optimizer, int loops) {
+        for (int i = 0; i < loops; i++) {
+            double desired = (i % 628) * 0.01 - Math.PI;
+            optimizer.optimize(1.5 + (i & 7) * 0.1, desired, -desired);
+            if (optimizer.steerChanged()) {
+                sink += optimizer.getRotations();
+                optimizer.steerSent();
+            }
+            if (optimizer.driveChanged()) {
+                sink += optimizer.getDriveVelocity();
+                optimizer.driveSent();
+            }
+        }
+    }
+}
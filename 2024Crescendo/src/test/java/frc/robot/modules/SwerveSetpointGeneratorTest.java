@@ -0,0 +1,127 @@
+package frc.robot.modules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+import frc.robot.Constants;
+
+class SwerveSetpointGeneratorTest {
+    private static final double DT = 0.02;
+    private static final double EPSILON = 1e-9;
+    private static final double MAX_SPEED = Constants.Swerve.SWERVE_MAX_SPEED;
+    private static final double MAX_STEER_VELOCITY = Constants.Swerve.STEER_MAX_VELOCITY * 2 * Math.PI;
+    private static final double MAX_ACCELERATION = Constants.Swerve.DRIVE_MAX_ACCELERATION;
+
+    private static SwerveSetpointGenerator generator(double maxSpeed, double maxSteerVelocity, double maxAcceleration) {
+        return new SwerveSetpointGenerator(maxSpeed, maxSteerVelocity, maxAcceleration,
+            Constants.Swerve.m_frontLeftLocation, Constants.Swerve.m_frontRightLocation,
+            Constants.Swerve.m_backLeftLocation, Constants.Swerve.m_backRightLocation);
+    }
+
+    /** @return radians between two module angles, modulo 180 degrees since a flip drives the other way */
+    private static double steerChange(double from, double to) {
+        double change = Math.abs(MathUtil.angleModulus(to - from));
+        return Math.min(change, Math.PI - change);
+    }
+
+    @Test
+    void discretizeMatchesChassisSpeeds() {
+        // limits out of reach so the setpoint is the whole request
+        SwerveSetpointGenerator generator = generator(1e9, 1e9, 1e9);
+        generator.calculate(2.0, 1.0, 3.0, 0, false, DT);
+
+        SwerveModuleState[] expected = Constants.Swerve.SWERVE_DRIVE_KINEMATICS.toSwerveModuleStates(
+            ChassisSpeeds.discretize(2.0, 1.0, 3.0, DT));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].speedMetersPerSecond, generator.speeds[i], 1e-9);
+            assertEquals(0, MathUtil.angleModulus(expected[i].angle.getRadians() - generator.angles[i]), 1e-9);
+        }
+    }
+
+    @Test
+    void noModuleExceedsMaxSpeed() {
+        SwerveSetpointGenerator generator = generator(MAX_SPEED, MAX_STEER_VELOCITY, MAX_ACCELERATION);
+        Random random = new Random(2024);
+        for (int loop = 0; loop < 5000; loop++) {
+            generator.calculate(random.nextGaussian() * 3 * MAX_SPEED, random.nextGaussian() * 3 * MAX_SPEED,
+                random.nextGaussian() * 20, random.nextDouble() * 2 * Math.PI, random.nextBoolean(), DT);
+            for (double speed : generator.speeds) {
+                assertTrue(speed <= MAX_SPEED + EPSILON, "module at " + speed + " m/s");
+            }
+        }
+    }
+
+    @Test
+    void steerChangeStaysWithinSteerVelocityWhileMoving() {
+        SwerveSetpointGenerator generator = generator(MAX_SPEED, MAX_STEER_VELOCITY, MAX_ACCELERATION);
+        for (int loop = 0; loop < 200; loop++) {
+            generator.calculate(MAX_SPEED, 0, 0, 0, false, DT);
+        }
+
+        // ask for sideways at full speed, the modules have to steer 90 degrees while still moving
+        double[] lastAngles = generator.angles.clone();
+        for (int loop = 0; loop < 200; loop++) {
+            generator.calculate(0, MAX_SPEED, 0, 0, false, DT);
+            for (int i = 0; i < lastAngles.length; i++) {
+                assertTrue(generator.speeds[i] > 0);
+                double change = steerChange(lastAngles[i], generator.angles[i]);
+                assertTrue(change <= MAX_STEER_VELOCITY * DT + EPSILON, "module " + i + " steered " + change + " rad");
+                lastAngles[i] = generator.angles[i];
+            }
+        }
+        assertEquals(0, steerChange(Math.PI / 2, generator.angles[0]), 1e-6);
+    }
+
+    @Test
+    void speedChangeStaysWithinScaledAcceleration() {
+        SwerveSetpointGenerator generator = generator(MAX_SPEED, MAX_STEER_VELOCITY, MAX_ACCELERATION);
+        double scale = 0.5;
+        generator.setAccelerationScale(0, scale);
+
+        double[] lastSpeeds = new double[4];
+        for (int loop = 0; loop < 200; loop++) {
+            generator.calculate(MAX_SPEED, 0, 0, 0, false, DT);
+            for (int i = 0; i < lastSpeeds.length; i++) {
+                double change = Math.abs(generator.speeds[i] - lastSpeeds[i]);
+                // the whole robot slows its acceleration with the scaled module
+                assertTrue(change <= MAX_ACCELERATION * scale * DT + EPSILON, "module " + i + " changed " + change + " m/s");
+                lastSpeeds[i] = generator.speeds[i];
+            }
+        }
+        assertEquals(MAX_SPEED, generator.speeds[0], 1e-6);
+    }
+
+    @Test
+    void reversalDeceleratesThroughZero() {
+        SwerveSetpointGenerator generator = generator(MAX_SPEED, MAX_STEER_VELOCITY, MAX_ACCELERATION);
+        for (int loop = 0; loop < 200; loop++) {
+            generator.calculate(MAX_SPEED, 0, 0, 0, false, DT);
+        }
+
+        double lastSigned = MAX_SPEED, lastAngle = generator.angles[0];
+        double slowest = MAX_SPEED;
+        for (int loop = 0; loop < 200; loop++) {
+            generator.calculate(-MAX_SPEED, 0, 0, 0, false, DT);
+            // speed along the original direction, goes from +max to -max
+            double signed = generator.speeds[0] * Math.cos(generator.angles[0]);
+            assertTrue(signed <= lastSigned + EPSILON, "sped back up to " + signed + " m/s");
+            assertTrue(lastSigned - signed <= MAX_ACCELERATION * DT + EPSILON, "changed " + (lastSigned - signed) + " m/s");
+            // flips instead of slewing around
+            assertEquals(0, steerChange(lastAngle, generator.angles[0]), 1e-9);
+
+            slowest = Math.min(slowest, generator.speeds[0]);
+            lastSigned = signed;
+            lastAngle = generator.angles[0];
+        }
+        assertTrue(slowest <= MAX_ACCELERATION * DT, "never slowed below " + slowest + " m/s");
+        assertEquals(-MAX_SPEED, lastSigned, 1e-6);
+    }
+}